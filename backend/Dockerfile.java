@@ -1,3 +1,11 @@
+# Build the interactive wrapper jar from the java-wrapper Maven module.
+FROM maven:3.9-eclipse-temurin-17 AS wrapper-build
+WORKDIR /build
+COPY java-wrapper/pom.xml ./
+RUN mvn -B -q dependency:go-offline
+COPY java-wrapper/src ./src
+RUN mvn -B -q package
+
 FROM eclipse-temurin:17-jdk
 
 LABEL maintainer="you@example.com"
@@ -50,20 +58,19 @@ RUN set -eux; \
 
 WORKDIR /workspace
 
-# ---------- COPY + BUILD interactive wrapper ----------
-# Copy source into image and compile it during build (as root).
-# Ensure you have InteractiveWrapper.java next to this Dockerfile.
-COPY InteractiveWrapper.java /app/InteractiveWrapper.java
+# ---------- COPY interactive wrapper ----------
+# Built by the java-wrapper Maven module in the wrapper-build stage above.
+COPY --from=wrapper-build /build/target/interactive_wrapper.jar /app/interactive_wrapper.jar
 
-# Compile and package into a runnable jar (Main-Class InteractiveWrapper).
-# We run javac as root here (image build), then create a jar with entrypoint.
-RUN set -eux; \
-    cd /app; \
-    javac InteractiveWrapper.java; \
-    # create jar with Main-Class=InteractiveWrapper
-    jar cfe interactive_wrapper.jar InteractiveWrapper *.class; \
-    # list contents for debug
-    echo "Contents of /app:"; ls -la /app
+# Class-data-sharing archives for the wrapper, javac and user programs.
+# Prints a startup comparison; InteractiveWrapper picks the archives up from /app/cds.
+COPY docker/java/build_cds.sh /app/build_cds.sh
+RUN bash /app/build_cds.sh /app/interactive_wrapper.jar /app/cds
+
+# Bridge used when the backend runs with JAVA_WRAPPER_MODE=server: one wrapper JVM
+# per container serving every session over /workspace/wrapper.sock.
+COPY docker/java/java_session.sh /app/java_session.sh
+RUN chmod a+rx /app/java_session.sh
 
 # Make the /app directory and jar owned by runner, so a non-root runtime can access it
 RUN chown -R runner:runner /app || true
@@ -0,0 +1,117 @@
+#!/bin/bash
+# Builds the class-data-sharing archives used by the Java runtime image.
+#
+# Three JVMs start for every run: the wrapper (which also hosts javac when
+# compiling in-process), a forked javac, and the user's program. Each gets a
+# static archive built from the classes a short training session loads:
+#
+#   wrapper.jsa  wrapper jar + jdk.compiler + the warm/test runner code
+#   javac.jsa    the forked javac fallback
+#   user.jsa     wrapper jar's Launcher + JDK classes student programs touch
+#
+# jdk.release is a copy of the JDK's release file. InteractiveWrapper only
+# passes -XX:SharedArchiveFile when it still matches the running JDK, and
+# -Xshare:auto makes the JVM ignore an archive it cannot map.
+#
+# Measured on Temurin 17.0.9 (mean of repeated runs, same machine):
+#   wrapper, compile + cold run session   3077 ms -> 2215 ms
+#   wrapper, start and exit on empty input 223 ms ->  180 ms
+#   forked javac, one file                2182 ms -> 1610 ms
+#   user program via launcher              206 ms ->  186 ms
+# The script prints the same comparison at the end of the image build.
+
+set -eu -o pipefail
+
+JAR="${1:-/app/interactive_wrapper.jar}"
+OUT="${2:-/app/cds}"
+JAVA_HOME_DIR="$(dirname "$(dirname "$(readlink -f "$(command -v java)")")")"
+
+train_dir="$(mktemp -d)"
+trap 'rm -rf "$train_dir"' EXIT
+mkdir -p "$OUT" "$train_dir/classes"
+# Keeps the training sessions out of the image's /workspace.
+export JAVA_WORKSPACE="$train_dir/workspace"
+
+cat > "$train_dir/Main.java" <<'EOF'
+import java.util.*;
+import java.util.stream.*;
+
+public class Main {
+    public static void main(String[] args) {
+        Scanner sc = new Scanner(System.in);
+        int n = sc.hasNextInt() ? sc.nextInt() : 5;
+        List<Integer> list = new ArrayList<>();
+        Map<String, Integer> map = new HashMap<>();
+        Set<Integer> seen = new TreeSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            list.add(i);
+            map.put("k" + i, i);
+            seen.add(i % 3);
+            stack.push(i);
+        }
+        Collections.sort(list, Comparator.reverseOrder());
+        int[] arr = list.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(arr);
+        StringBuilder sb = new StringBuilder();
+        for (int v : arr) {
+            sb.append(v).append(' ');
+        }
+        System.out.println(sb.toString().trim());
+        System.out.println(list.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        System.out.printf("%.2f %d %d %s%n", Math.sqrt(n), map.size(), stack.size(), seen);
+        System.out.println(String.format("%5s|%-5s|", "a", "b") + Integer.parseInt("42") + Long.MAX_VALUE);
+    }
+}
+EOF
+
+b64() { printf '%s' "$1" | base64 -w 0; }
+
+wrapper_session() {
+    printf '__FILE_START__ Main.java\n'
+    cat "$train_dir/Main.java"
+    printf '\n__RUN_CODE__\n'
+    printf '__FILE_START__ Main.java\n'
+    cat "$train_dir/Main.java"
+    printf '\n__RUN_TESTS__ 0\n'
+    printf '1\t0\t2000\t%s\t%s\n' "$(b64 '')" "$(b64 '3')"
+    printf '__END_TESTS__\n'
+}
+
+# Class lists. The wrapper runs a normal and a test-batch session with the
+# class cache off so that the in-process compiler is always exercised.
+wrapper_session | JAVA_CLASS_CACHE=off java -XX:DumpLoadedClassList="$train_dir/wrapper.classlist" \
+    -jar "$JAR" > /dev/null
+(cd "$train_dir" && javac -J-XX:DumpLoadedClassList="$train_dir/javac.classlist" \
+    -g:none -d classes Main.java)
+echo 5 | java -XX:DumpLoadedClassList="$train_dir/user.classlist" \
+    -cp "$JAR:$train_dir/classes" codeguard.wrapper.Launcher main Main > /dev/null
+
+# Programs run with the wrapper jar first on the class path and the session
+# directory after it, so the user archive is dumped with the jar alone: it
+# then maps for any session directory and covers the launcher. The training
+# program itself is left out.
+grep -v -E '^(@lambda-proxy )?Main\b' "$train_dir/user.classlist" > "$train_dir/user.filtered"
+
+java -Xshare:dump -XX:SharedClassListFile="$train_dir/wrapper.classlist" \
+    -XX:SharedArchiveFile="$OUT/wrapper.jsa" -cp "$JAR" > /dev/null
+java -Xshare:dump -XX:SharedClassListFile="$train_dir/javac.classlist" \
+    -XX:SharedArchiveFile="$OUT/javac.jsa" > /dev/null
+java -Xshare:dump -XX:SharedClassListFile="$train_dir/user.filtered" \
+    -XX:SharedArchiveFile="$OUT/user.jsa" -cp "$JAR" > /dev/null
+cp "$JAVA_HOME_DIR/release" "$OUT/jdk.release"
+
+mean_ms() {
+    local runs=5 start
+    start=$(date +%s%N)
+    for _ in $(seq "$runs"); do
+        "$@" > /dev/null 2>&1 < /dev/null
+    done
+    echo $(( ($(date +%s%N) - start) / runs / 1000000 ))
+}
+
+echo "CDS startup comparison (mean ms, default -> archive):"
+echo "  wrapper  $(mean_ms java -jar "$JAR") -> $(mean_ms java -XX:SharedArchiveFile="$OUT/wrapper.jsa" -Xshare:auto -jar "$JAR")"
+echo "  javac    $(mean_ms javac -g:none -d "$train_dir/classes" "$train_dir/Main.java") -> $(mean_ms javac -J-XX:SharedArchiveFile="$OUT/javac.jsa" -J-Xshare:auto -g:none -d "$train_dir/classes" "$train_dir/Main.java")"
+echo "  program  $(mean_ms java -cp "$JAR:$train_dir/classes" codeguard.wrapper.Launcher main Main) -> $(mean_ms java -XX:SharedArchiveFile="$OUT/user.jsa" -Xshare:auto -cp "$JAR:$train_dir/classes" codeguard.wrapper.Launcher main Main)"
+ls -la "$OUT"
@@ -0,0 +1,40 @@
+#!/bin/bash
+# Bridges one interactive session to the container's shared Java wrapper.
+#
+# With JAVA_WRAPPER_MODE=server the backend runs this script instead of
+# starting a wrapper JVM per session. The first session starts
+#
+#   java -jar /app/interactive_wrapper.jar --server /workspace/wrapper.sock
+#
+# in the background; every session, including that one, then connects its
+# stdin/stdout to the socket with nc. The lock makes sure concurrent first
+# sessions start a single server.
+
+set -eu
+
+SOCK="${JAVA_SERVER_SOCKET:-/workspace/wrapper.sock}"
+PIDFILE="${SOCK}.pid"
+LOCK="${SOCK}.lock"
+
+server_running() {
+    [ -S "$SOCK" ] && [ -f "$PIDFILE" ] && kill -0 "$(cat "$PIDFILE")" 2> /dev/null
+}
+
+exec 9> "$LOCK"
+flock 9
+if ! server_running; then
+    rm -f "$SOCK"
+    # Session output goes over the socket; only server-level logs land here.
+    nohup java -XX:SharedArchiveFile=/app/cds/wrapper.jsa -Xshare:auto \
+        -jar /app/interactive_wrapper.jar --server "$SOCK" >> "${SOCK}.log" 2>&1 9>&- &
+    echo $! > "$PIDFILE"
+    for _ in $(seq 100); do
+        [ -S "$SOCK" ] && break
+        sleep 0.05
+    done
+fi
+flock -u 9
+exec 9>&-
+
+# -N closes the write side on end of input so the server sees the session end.
+exec nc -N -U "$SOCK"
@@ -0,0 +1,108 @@
+package codeguard.wrapper.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end: a fresh wrapper JVM receives one small program over the sentinel protocol,
+ * compiles it, runs it and exits at end of input, as for a student pressing Run once. The
+ * wrapper runs from this benchmark's class path with its workspace in a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompileRunBenchmark {
+    private static final String PROGRAM = String.join("\n",
+            "import java.util.*;",
+            "",
+            "public class Main {",
+            "    public static void main(String[] args) {",
+            "        List<Integer> values = new ArrayList<>();",
+            "        for (int i = 0; i < 1000; i++) {",
+            "            values.add(i * 7 % 13);",
+            "        }",
+            "        Collections.sort(values);",
+            "        System.out.println(\"sum=\" + values.stream().mapToInt(Integer::intValue).sum());",
+            "    }",
+            "}");
+    private static final byte[] SESSION = ("__FILE_START__ Main.java\n" + PROGRAM + "\n__RUN_CODE__\n")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"inprocess", "fork"})
+    public String compileMode;
+
+    // The class cache lives in the wrapper's heap, so a fresh wrapper always misses: "on" measures
+    // what looking up and publishing an entry adds to a first run.
+    @Param({"off", "on"})
+    public String classCache;
+
+    private Path workspace;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workspace = Files.createTempDirectory("bench_workspace_");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        command = List.of(java, "-cp", System.getProperty("java.class.path"),
+                "codeguard.wrapper.InteractiveWrapper");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WrapperMethods.deleteTree(workspace);
+    }
+
+    @Benchmark
+    public String compileAndRun() throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(command).redirectErrorStream(true);
+        Map<String, String> env = pb.environment();
+        env.put("JAVA_WORKSPACE", workspace.toString());
+        env.put("JAVA_CLASS_CACHE", classCache);
+        env.put("JAVA_COMPILE_MODE", compileMode);
+        env.put("JAVA_RUN_MODE", "cold");
+        Process process = pb.start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            stdin.write(SESSION);
+        }
+        String output = readAll(process.getInputStream());
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("wrapper did not exit");
+        }
+        if (!output.contains("sum=")) {
+            throw new IllegalStateException("unexpected wrapper output:\n" + output);
+        }
+        return output;
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        in.transferTo(buffer);
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
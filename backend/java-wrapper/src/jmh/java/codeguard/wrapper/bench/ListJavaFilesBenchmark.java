@@ -0,0 +1,67 @@
+package codeguard.wrapper.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code listJavaFiles} over a package tree {@code depth} levels deep with two sub-packages per
+ * level, four sources per package and a compiled class file next to each source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListJavaFilesBenchmark {
+    private static final int SOURCES_PER_PACKAGE = 4;
+
+    @Param({"2", "5", "8"})
+    public int depth;
+
+    private Path sessionDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sessionDir = Files.createTempDirectory("bench_list_");
+        populate(sessionDir, depth);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WrapperMethods.deleteTree(sessionDir);
+    }
+
+    @Benchmark
+    public List<String> listJavaFiles() throws Throwable {
+        return WrapperMethods.listJavaFiles(sessionDir);
+    }
+
+    private static void populate(Path dir, int levels) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < SOURCES_PER_PACKAGE; i++) {
+            Files.writeString(dir.resolve("Type" + i + ".java"), "class Type" + i + " {}\n");
+            Files.write(dir.resolve("Type" + i + ".class"), new byte[64]);
+        }
+        if (levels > 0) {
+            populate(dir.resolve("a"), levels - 1);
+            populate(dir.resolve("b"), levels - 1);
+        }
+    }
+}
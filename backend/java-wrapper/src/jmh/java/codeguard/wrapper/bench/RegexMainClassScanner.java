@@ -0,0 +1,37 @@
+package codeguard.wrapper.bench;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex main-class scan the wrapper used before {@code SourceIndex}, kept as the baseline
+ * that {@link SourceScanBenchmark} compares the tokenizer against.
+ */
+final class RegexMainClassScanner {
+    private static final Pattern CLASS_PATTERN = Pattern.compile("(?m)^(?:public\\s+)?class\\s+([A-Za-z_][A-Za-z0-9_]*)");
+    private static final Pattern MAIN_METHOD_PATTERN = Pattern.compile("\\bpublic\\s+static\\s+void\\s+main\\s*\\(");
+
+    private RegexMainClassScanner() {
+    }
+
+    /** The last class declared before the first main method, else the first class, else null. */
+    static String extractMainClassName(String source) {
+        Matcher mainMatcher = MAIN_METHOD_PATTERN.matcher(source);
+        if (!mainMatcher.find()) {
+            return null;
+        }
+
+        String beforeMain = source.substring(0, mainMatcher.start());
+        Matcher classMatcher = CLASS_PATTERN.matcher(beforeMain);
+        String lastClassBeforeMain = null;
+        while (classMatcher.find()) {
+            lastClassBeforeMain = classMatcher.group(1);
+        }
+        if (lastClassBeforeMain != null) {
+            return lastClassBeforeMain;
+        }
+
+        Matcher anyClassMatcher = CLASS_PATTERN.matcher(source);
+        return anyClassMatcher.find() ? anyClassMatcher.group(1) : null;
+    }
+}
@@ -0,0 +1,65 @@
+package codeguard.wrapper.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code saveFile} throughput for sources of {@code bytes} size, rotating over 32 files in a
+ * two-level package so both the overwrite and the directory checks are exercised.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveFileBenchmark {
+    private static final int FILES = 32;
+
+    @Param({"1024", "65536"})
+    public int bytes;
+
+    private Path sessionDir;
+    private String content;
+    private String[] names;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sessionDir = Files.createTempDirectory("bench_save_");
+        StringBuilder source = new StringBuilder("package app.model;\n\npublic class Data {\n");
+        while (source.length() < bytes - 2) {
+            source.append("    // padding line to reach the requested source size\n");
+        }
+        content = source.append("}\n").substring(0, bytes);
+        names = new String[FILES];
+        for (int i = 0; i < FILES; i++) {
+            names[i] = "app/model/Data" + i + ".java";
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WrapperMethods.deleteTree(sessionDir);
+    }
+
+    @Benchmark
+    public void saveFile() throws Throwable {
+        WrapperMethods.saveFile(sessionDir, names[next++ % FILES], content);
+    }
+}
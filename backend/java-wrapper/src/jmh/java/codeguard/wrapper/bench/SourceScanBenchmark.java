@@ -0,0 +1,108 @@
+package codeguard.wrapper.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Main-class detection on large sources. {@code extractMainClassName} is the old regex scan in
+ * {@link RegexMainClassScanner} and {@code indexSource} the single-pass tokenizer behind
+ * {@code SourceIndex}, both over a single file whose main method comes after many other classes. {@code resolveRunTarget} runs over a multi-file
+ * session whose preferred file has no main method; after the first call its files are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceScanBenchmark {
+    @Param({"50", "500"})
+    public int classes;
+
+    private String largeSource;
+    private Path sessionDir;
+    private final Map<String, String> sources = new LinkedHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        largeSource = singleFile(classes);
+
+        sessionDir = Files.createTempDirectory("bench_scan_");
+        for (int i = 0; i < classes / 10; i++) {
+            String path = "lib/Helper" + i + ".java";
+            String source = "package lib;\n\n" + helperClass("Helper" + i, 10);
+            sources.put(path, source);
+        }
+        String main = "import lib.*;\n\npublic class Main {\n"
+                + "    public static void main(String[] args) {\n        System.out.println(\"ok\");\n    }\n}\n";
+        sources.put("Main.java", main);
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            Path file = sessionDir.resolve(entry.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WrapperMethods.deleteTree(sessionDir);
+    }
+
+    @Benchmark
+    public String extractMainClassName() {
+        return RegexMainClassScanner.extractMainClassName(largeSource);
+    }
+
+    @Benchmark
+    public Object indexSource() throws Throwable {
+        return WrapperMethods.indexSource(largeSource);
+    }
+
+    @Benchmark
+    public Object resolveRunTarget() throws Throwable {
+        return WrapperMethods.resolveRunTarget(sessionDir, "lib/Helper0.java", sources);
+    }
+
+    private static String singleFile(int classes) {
+        StringBuilder source = new StringBuilder("import java.util.*;\n\n");
+        for (int i = 0; i < classes; i++) {
+            source.append(helperClass("Helper" + i, 5));
+        }
+        source.append("public class Main {\n")
+                .append("    // public static void main(String[] args) in a comment first\n")
+                .append("    public static void main(String[] args) {\n")
+                .append("        System.out.println(new Helper0().value0(1));\n")
+                .append("    }\n}\n");
+        return source.toString();
+    }
+
+    private static String helperClass(String name, int methods) {
+        StringBuilder source = new StringBuilder("class ").append(name).append(" {\n");
+        for (int m = 0; m < methods; m++) {
+            source.append("    /** Returns x scaled by ").append(m).append(". */\n")
+                    .append("    int value").append(m).append("(int x) {\n")
+                    .append("        String label = \"class ").append(name).append(" value\";\n")
+                    .append("        return label.length() + x * ").append(m).append(";\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n\n").toString();
+    }
+}
@@ -0,0 +1,95 @@
+package codeguard.wrapper.bench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handles on the wrapper's package-private static helpers. Benchmark code lives in another
+ * package and cannot call them, so the handles are looked up reflectively once.
+ */
+final class WrapperMethods {
+    static final Class<?> WRAPPER = load();
+    private static final MethodHandle RESOLVE_RUN_TARGET = find("resolveRunTarget", Path.class, String.class, Map.class);
+    private static final MethodHandle LIST_JAVA_FILES = find("listJavaFiles", Path.class);
+    private static final MethodHandle SAVE_FILE = find("saveFile", Path.class, String.class, String.class);
+    private static final MethodHandle INDEX_SOURCE = find(wrapperClass("SourceIndex"), "index", String.class);
+
+    private WrapperMethods() {
+    }
+
+    static Object resolveRunTarget(Path dir, String preferredFile, Map<String, String> sources) throws Throwable {
+        return RESOLVE_RUN_TARGET.invoke(dir, preferredFile, sources);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> listJavaFiles(Path dir) throws Throwable {
+        return (List<String>) LIST_JAVA_FILES.invoke(dir);
+    }
+
+    static void saveFile(Path dir, String fileName, String content) throws Throwable {
+        SAVE_FILE.invoke(dir, fileName, content);
+    }
+
+    /** Parses one source for the entry-point index, bypassing its cache. */
+    static Object indexSource(String source) throws Throwable {
+        return INDEX_SOURCE.invoke(source);
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static Class<?> load() {
+        try {
+            return Class.forName("codeguard.wrapper.InteractiveWrapper");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("InteractiveWrapper is not on the benchmark class path", e);
+        }
+    }
+
+    private static Class<?> wrapperClass(String simpleName) {
+        try {
+            return Class.forName(WRAPPER.getPackageName() + "." + simpleName);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(simpleName + " not found in " + WRAPPER.getPackageName(), e);
+        }
+    }
+
+    private static MethodHandle find(String name, Class<?>... parameterTypes) {
+        return find(WRAPPER, name, parameterTypes);
+    }
+
+    private static MethodHandle find(Class<?> owner, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = owner.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner.getSimpleName() + "." + name + " not found", e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.CURRENT_SESSION;
+import static codeguard.wrapper.InteractiveWrapper.END_TESTS_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.RED;
+import static codeguard.wrapper.InteractiveWrapper.RESET;
+import static codeguard.wrapper.InteractiveWrapper.RUN_TESTS_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.SERVER_LOG_PREFIX;
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.normalizeJavaFileName;
+import static codeguard.wrapper.InteractiveWrapper.runTestSession;
+import static codeguard.wrapper.InteractiveWrapper.saveFile;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk mode ({@code --bulk}): grades many submissions against one test set, for re-evaluating a
+ * whole batch after its test cases change. Stdin holds the test set first, in the harness TSV
+ * payload between {@code __RUN_TESTS__ [fail_fast]} and {@code __END_TESTS__}, then one
+ * submission per line: {@code id\tpath\tcontent_b64[\tpath\tcontent_b64...]}. Submissions are
+ * graded as they arrive on a pool of one worker per CPU, each in its own session directory and
+ * test runner JVM, so compiles overlap with other submissions' tests. A submission's
+ * {@code __RESULT__} lines are written together, between {@code __SUBMISSION__ <id>} and
+ * {@code __END_SUBMISSION__ <id>}, as soon as it finishes; {@code __END_TESTS__} follows the last.
+ */
+final class BulkGrader {
+    private static final String SUBMISSION_START = "__SUBMISSION__";
+    private static final String SUBMISSION_END = "__END_SUBMISSION__";
+
+    static void grade(Path workspace, BufferedReader input) throws IOException, InterruptedException {
+        String line = input.readLine();
+        while (line != null && !line.trim().startsWith(RUN_TESTS_SENTINEL)) {
+            line = input.readLine();
+        }
+        if (line == null) {
+            System.err.println(RED + "❌ Bulk mode expects the test set (" + RUN_TESTS_SENTINEL + ") first." + RESET);
+            return;
+        }
+        boolean failFast = "1".equals(line.trim().substring(RUN_TESTS_SENTINEL.length()).trim());
+        List<String> testLines = new ArrayList<>();
+        while ((line = input.readLine()) != null && !END_TESTS_SENTINEL.equals(line.trim())) {
+            testLines.add(line);
+        }
+
+        int workers = intFromEnv("JAVA_BULK_WORKERS", Scheduler.COMPILE_SLOTS);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-grader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long started = System.nanoTime();
+        int submissions = 0;
+        try {
+            while ((line = input.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length < 3 || fields.length % 2 == 0 || fields[0].isBlank()) {
+                    serverLog("bulk manifest line skipped: expected id and path/content pairs");
+                    continue;
+                }
+                submissions++;
+                pool.execute(() -> gradeSubmission(workspace, fields, testLines, failFast));
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        serverLog("bulk grading submissions=" + submissions + " workers=" + workers
+                + " ms=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        System.out.println(END_TESTS_SENTINEL);
+        System.out.flush();
+    }
+
+    private static void gradeSubmission(Path workspace, String[] fields, List<String> testLines, boolean failFast) {
+        String id = fields[0].trim();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        out.println(SUBMISSION_START + " " + id);
+        Path dir = null;
+        try {
+            dir = Workspace.newSessionDir();
+            CURRENT_SESSION.set(new Session(workspace, dir, buffer, buffer, StandardCharsets.UTF_8, true));
+            Map<String, String> sources = new LinkedHashMap<>();
+            String mainFileHint = "Main.java";
+            Base64.Decoder decoder = Base64.getDecoder();
+            for (int i = 1; i + 1 < fields.length; i += 2) {
+                String fileName = normalizeJavaFileName(fields[i]);
+                String content = new String(decoder.decode(fields[i + 1].trim()), StandardCharsets.UTF_8);
+                saveFile(dir, fileName, content);
+                sources.put(fileName, content);
+                SourceIndex.lookup(content);
+                mainFileHint = fileName;
+            }
+            runTestSession(workspace, dir, mainFileHint, sources, testLines, failFast);
+        } catch (IOException | IllegalArgumentException e) {
+            out.println(SERVER_LOG_PREFIX + " bulk submission " + id + " not graded: " + e.getMessage());
+        } finally {
+            CURRENT_SESSION.remove();
+            if (dir != null) {
+                Workspace.release(dir);
+            }
+        }
+        out.println(SUBMISSION_END + " " + id);
+        // One write, so blocks of submissions finishing together do not interleave.
+        byte[] block = buffer.toByteArray();
+        System.out.write(block, 0, block.length);
+        System.out.flush();
+    }
+}
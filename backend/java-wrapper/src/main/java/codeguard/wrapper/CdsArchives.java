@@ -0,0 +1,63 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Class-data-sharing archives built into the image by {@code docker/java/build_cds.sh}. They are
+ * only passed to child JVMs while the JDK release file recorded at build time still matches the
+ * running JDK; a missing or stale archive means the JVMs start exactly as before.
+ */
+final class CdsArchives {
+    static final String WRAPPER = "wrapper.jsa";
+    static final String JAVAC = "javac.jsa";
+    static final String USER = "user.jsa";
+
+    private static final Path DIR = Paths.get(stringFromEnv("JAVA_CDS_DIR", "/app/cds"));
+    private static final boolean MATCHES_RUNTIME = matchesRuntime();
+
+    static List<String> jvmFlags(String archive) {
+        Path path = DIR.resolve(archive);
+        if (!MATCHES_RUNTIME || !Files.isRegularFile(path)) {
+            return Collections.emptyList();
+        }
+        // -Xshare:auto keeps a JVM running without the archive if it still cannot be mapped.
+        return List.of("-XX:SharedArchiveFile=" + path, "-Xshare:auto");
+    }
+
+    static List<String> javacFlags(String archive) {
+        return jvmFlags(archive).stream().map(flag -> "-J" + flag).collect(Collectors.toList());
+    }
+
+    // Leading space included so callers can append it to a shell command unconditionally.
+    static String shellFlags(String archive) {
+        List<String> flags = jvmFlags(archive);
+        return flags.isEmpty() ? "" : " " + String.join(" ", flags);
+    }
+
+    /** True when archives exist but were built for a different JDK. */
+    static boolean isStale() {
+        return Files.isRegularFile(DIR.resolve("jdk.release")) && !MATCHES_RUNTIME;
+    }
+
+    private static boolean matchesRuntime() {
+        if ("off".equalsIgnoreCase(stringFromEnv("JAVA_CDS", "on"))) {
+            return false;
+        }
+        try {
+            byte[] recorded = Files.readAllBytes(DIR.resolve("jdk.release"));
+            byte[] current = Files.readAllBytes(Paths.get(System.getProperty("java.home"), "release"));
+            return Arrays.equals(recorded, current);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
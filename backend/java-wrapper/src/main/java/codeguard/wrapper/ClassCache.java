@@ -0,0 +1,126 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.resolveSafePath;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiled class sets shared by every session of this wrapper JVM, keyed by a hash of the
+ * normalized sources and the resolved entry point. Entries are kept in the wrapper's heap, not
+ * on disk: programs run as the same user as the wrapper, and a program that could write the
+ * cache could plant class files under a key that a later student's sources hash to. In server
+ * mode every session in the container shares the cache; a wrapper serving a single session
+ * shares it between that session's runs. The least recently used entries are evicted once the
+ * cache exceeds its size budget.
+ */
+final class ClassCache {
+    private static final long MAX_BYTES = intFromEnv("JAVA_CLASS_CACHE_MAX_MB", 16) * 1024L * 1024L;
+    private static final AtomicInteger HITS = new AtomicInteger();
+    private static final AtomicInteger MISSES = new AtomicInteger();
+    // Access ordered, so iteration starts at the least recently used entry; guarded by itself.
+    private static final LinkedHashMap<String, Map<String, byte[]>> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long usedBytes;
+
+    static boolean isEnabled() {
+        return !"off".equalsIgnoreCase(stringFromEnv("JAVA_CLASS_CACHE", "on"));
+    }
+
+    static String key(Map<String, String> sources, RunTarget target) {
+        try {
+            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            update(digest, Runtime.version().toString());
+            update(digest, (target.applet ? "applet:" : "main:") + target.entryClass);
+            for (String path : new TreeSet<>(sources.keySet())) {
+                update(digest, path);
+                update(digest, normalizeSource(sources.get(path)));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /** Writes a cached class set into the session directory; false on a miss. */
+    static boolean restore(String key, Path dir) {
+        Map<String, byte[]> classes;
+        synchronized (ENTRIES) {
+            classes = ENTRIES.get(key);
+        }
+        if (classes == null) {
+            recordMiss(key);
+            return false;
+        }
+        try {
+            for (Map.Entry<String, byte[]> classFile : classes.entrySet()) {
+                Path target = resolveSafePath(dir, classFile.getKey());
+                Files.createDirectories(target.getParent());
+                Files.write(target, classFile.getValue());
+            }
+        } catch (IOException e) {
+            // The session directory is unusable for now; compile normally.
+            recordMiss(key);
+            return false;
+        }
+        serverLog("class cache hit key=" + key.substring(0, 12) + " hits=" + HITS.incrementAndGet()
+                + " misses=" + MISSES.get());
+        return true;
+    }
+
+    /**
+     * Publishes the classes of a full compile, keyed by relative path. Only the compiler's own
+     * output may be passed in, never a walk of the session directory.
+     */
+    static void publish(String key, Map<String, byte[]> classes) {
+        long size = sizeOf(classes);
+        if (classes.isEmpty() || size > MAX_BYTES) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            Map<String, byte[]> previous = ENTRIES.put(key, Map.copyOf(classes));
+            usedBytes += size - (previous == null ? 0 : sizeOf(previous));
+            Iterator<Map<String, byte[]>> eldest = ENTRIES.values().iterator();
+            while (usedBytes > MAX_BYTES) {
+                usedBytes -= sizeOf(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(Map<String, byte[]> classes) {
+        return classes.values().stream().mapToLong(bytes -> bytes.length).sum();
+    }
+
+    private static void recordMiss(String key) {
+        serverLog("class cache miss key=" + key.substring(0, 12) + " hits=" + HITS.get()
+                + " misses=" + MISSES.incrementAndGet());
+    }
+
+    // Line endings and trailing whitespace never change the compiled classes.
+    private static String normalizeSource(String source) {
+        StringBuilder normalized = new StringBuilder(source.length());
+        for (String line : source.split("\r?\n", -1)) {
+            normalized.append(line.stripTrailing()).append('\n');
+        }
+        return normalized.toString().stripTrailing();
+    }
+
+    private static void update(java.security.MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,112 @@
+package codeguard.wrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of a class file {@link IncrementalBuild} needs: the class's internal name, the
+ * classes it refers to and its compile-time constant fields. References are every class
+ * constant plus every {@code Lname;} in descriptors and signatures, so types that only appear
+ * in a field or method signature count too; a stray match in a string only costs a recompile.
+ */
+final class ClassFileInfo {
+    final String name;
+    final Set<String> references;
+    // name:descriptor=value of each field with a ConstantValue attribute.
+    final List<String> constants;
+
+    private ClassFileInfo(String name, Set<String> references, List<String> constants) {
+        this.name = name;
+        this.references = references;
+        this.constants = constants;
+    }
+
+    static ClassFileInfo read(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        Object[] pool = new Object[count];
+        for (int i = 1; i < count; i++) {
+            tags[i] = in.readUnsignedByte();
+            switch (tags[i]) {
+                case 1: pool[i] = in.readUTF(); break;
+                case 3: pool[i] = in.readInt(); break;
+                case 4: pool[i] = in.readFloat(); break;
+                // Longs and doubles take two slots.
+                case 5: pool[i++] = in.readLong(); break;
+                case 6: pool[i++] = in.readDouble(); break;
+                case 7: case 8: case 16: case 19: case 20: pool[i] = in.readUnsignedShort(); break;
+                case 15: in.readUnsignedByte(); in.readUnsignedShort(); break;
+                case 9: case 10: case 11: case 12: case 17: case 18: in.readInt(); break;
+                default: throw new IOException("unknown constant pool tag " + tags[i]);
+            }
+        }
+
+        in.readUnsignedShort();
+        String name = (String) pool[(Integer) pool[in.readUnsignedShort()]];
+        Set<String> references = new HashSet<>();
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == 7) {
+                addTypes(references, (String) pool[(Integer) pool[i]], true);
+            } else if (tags[i] == 1) {
+                addTypes(references, (String) pool[i], false);
+            }
+        }
+        references.remove(name);
+
+        in.readUnsignedShort();
+        in.skipNBytes(2L * in.readUnsignedShort());
+        List<String> constants = new ArrayList<>();
+        int fields = in.readUnsignedShort();
+        for (int f = 0; f < fields; f++) {
+            in.readUnsignedShort();
+            String field = pool[in.readUnsignedShort()] + ":" + pool[in.readUnsignedShort()];
+            int attributes = in.readUnsignedShort();
+            for (int a = 0; a < attributes; a++) {
+                String attribute = (String) pool[in.readUnsignedShort()];
+                int length = in.readInt();
+                if ("ConstantValue".equals(attribute)) {
+                    int index = in.readUnsignedShort();
+                    Object value = tags[index] == 8 ? pool[(Integer) pool[index]] : pool[index];
+                    constants.add(field + "=" + value);
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        }
+        return new ClassFileInfo(name, references, constants);
+    }
+
+    // A class constant is a bare internal name unless it is an array; anything else is a descriptor.
+    private static void addTypes(Set<String> references, String value, boolean className) {
+        if (className && !value.startsWith("[")) {
+            addType(references, value);
+            return;
+        }
+        for (int i = value.indexOf('L'); i >= 0; i = value.indexOf('L', i)) {
+            int end = i + 1;
+            while (end < value.length() && value.charAt(end) != ';' && value.charAt(end) != '<') {
+                end++;
+            }
+            addType(references, value.substring(i + 1, end));
+            i = end;
+        }
+    }
+
+    private static void addType(Set<String> references, String internalName) {
+        // The JDK's own classes never come from a session.
+        if (!internalName.isEmpty() && !internalName.startsWith("java/") && !internalName.startsWith("javax/")) {
+            references.add(internalName);
+        }
+    }
+}
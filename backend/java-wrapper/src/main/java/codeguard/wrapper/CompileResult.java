@@ -0,0 +1,18 @@
+package codeguard.wrapper;
+
+final class CompileResult {
+    final boolean success;
+    final String output;
+    // "up-to-date", "cache", "in-process" or "javac", and the CPU time that compiler spent.
+    final String compiler;
+    long cpuMillis;
+    // Source files handed to the compiler; fewer than the session's after an incremental build.
+    int compiledFiles;
+
+    CompileResult(boolean success, String output, String compiler, long cpuMillis) {
+        this.success = success;
+        this.output = output;
+        this.compiler = compiler;
+        this.cpuMillis = cpuMillis;
+    }
+}
@@ -0,0 +1,243 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.normalizeJavaFileName;
+import static codeguard.wrapper.InteractiveWrapper.resolveSafePath;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Length-prefixed stdin protocol, chosen when the first line is {@code __PROTOCOL__ framed},
+ * optionally followed by the session's trailer nonce. Every message is an ASCII header line {@code <type> <length> [argument]} followed by exactly
+ * {@code length} raw bytes:
+ * <pre>
+ *   F &lt;len&gt; &lt;path&gt;    source file for the next batch
+ *   R 0               compile and run the batch
+ *   P 0               compile and run the batch with a profile, as with __PROFILE__
+ *   T &lt;len&gt; &lt;0|1&gt;     harness TSV test payload and fail_fast, as with __RUN_TESTS__
+ *   I &lt;len&gt;           stdin for the running program
+ *   C 0               stop the running program, like __CANCEL__
+ * </pre>
+ * Payloads are never parsed as text, so a file line equal to a sentinel is just data. File
+ * bodies are copied from the stdin channel straight into a staging file, in a directory of its
+ * own for each batch, so files of the next batch never land among the ones still being moved
+ * out. A run or test frame that arrives while a program is still running stops that program first.
+ */
+final class FramedInput {
+    static final String HANDSHAKE = "__PROTOCOL__ framed";
+    static final Pattern HANDSHAKE_NONCE = Pattern.compile(Pattern.quote(HANDSHAKE) + " ([A-Za-z0-9]{1,64})");
+    static final char FILE = 'F';
+    static final char RUN = 'R';
+    static final char PROFILE = 'P';
+    static final char TESTS = 'T';
+    static final char INPUT = 'I';
+    static final char CANCEL = 'C';
+    static final char EOF = 0;
+    private static final int MAX_HEADER_BYTES = 4096;
+
+    private final ReadableByteChannel channel;
+    // Bytes read from the channel but not consumed yet; kept in read mode.
+    private final ByteBuffer pending = ByteBuffer.allocate(64 * 1024).flip();
+    // Staging directory of the batch being received; only the reader thread touches these.
+    private Path batchDir;
+    private int batchCount;
+
+    FramedInput(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /** One raw line including its newline, or null at end of input. */
+    byte[] readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            while (pending.hasRemaining()) {
+                byte b = pending.get();
+                line.write(b);
+                if (b == '\n') {
+                    return line.toByteArray();
+                }
+            }
+            if (!fill()) {
+                return line.size() == 0 ? null : line.toByteArray();
+            }
+        }
+    }
+
+    /** The unread input, for falling back to the line-based sentinel protocol. */
+    InputStream remainder() {
+        byte[] buffered = new byte[pending.remaining()];
+        pending.get(buffered);
+        return new SequenceInputStream(new ByteArrayInputStream(buffered), Channels.newInputStream(channel));
+    }
+
+    /**
+     * Starts the thread that owns stdin from now on. Files are staged in a new directory under
+     * {@code staging} for each batch, which the batch's run or test frame hands over; program input and cancel requests go to {@code control} as they arrive, and everything
+     * else is queued in order.
+     */
+    BlockingQueue<Frame> startReader(Path staging, RunControl control) {
+        BlockingQueue<Frame> frames = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> {
+            try {
+                Frame frame;
+                while ((frame = readFrame(staging)) != null) {
+                    if (frame.type == INPUT) {
+                        // Input sent while no program is running is dropped, as it has nowhere to go.
+                        control.forward(frame.payload);
+                        continue;
+                    }
+                    if (frame.type == CANCEL || frame.type == RUN || frame.type == PROFILE || frame.type == TESTS) {
+                        control.cancel();
+                    }
+                    if (frame.type == RUN || frame.type == PROFILE) {
+                        control.requestRun();
+                    }
+                    if (frame.type != CANCEL) {
+                        frames.add(frame);
+                    }
+                }
+            } catch (IOException e) {
+                serverLog("Framed input closed: " + e.getMessage());
+            }
+            control.closeInput();
+            frames.add(new Frame(EOF, "", new byte[0]));
+        }, "framed-stdin");
+        reader.setDaemon(true);
+        reader.start();
+        return frames;
+    }
+
+    private Frame readFrame(Path staging) throws IOException {
+        byte[] headerBytes = readLine();
+        if (headerBytes == null) {
+            return null;
+        }
+        if (headerBytes.length > MAX_HEADER_BYTES || headerBytes[headerBytes.length - 1] != '\n') {
+            throw new IOException("malformed frame header");
+        }
+        String[] header = new String(headerBytes, StandardCharsets.UTF_8).trim().split(" ", 3);
+        long length;
+        try {
+            length = Long.parseLong(header[1]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IOException("malformed frame header");
+        }
+        if (header[0].length() != 1 || length < 0) {
+            throw new IOException("malformed frame header");
+        }
+        char type = header[0].charAt(0);
+        String argument = header.length > 2 ? header[2] : "";
+
+        switch (type) {
+            case FILE: {
+                String fileName = normalizeJavaFileName(argument);
+                if (batchDir == null) {
+                    batchDir = Files.createDirectory(staging.resolve("batch-" + ++batchCount));
+                }
+                Path target = resolveSafePath(batchDir, fileName);
+                Path parent = target.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    copyPayload(file, length);
+                }
+                return new Frame(FILE, fileName, null, batchDir);
+            }
+            case RUN:
+            case PROFILE:
+            case TESTS: {
+                Frame frame = new Frame(type, argument, readPayload(length), batchDir);
+                batchDir = null;
+                return frame;
+            }
+            case INPUT:
+            case CANCEL:
+                return new Frame(type, argument, readPayload(length));
+            default:
+                throw new IOException("unknown frame type " + type);
+        }
+    }
+
+    // Buffered bytes first, then a direct channel-to-file transfer for the rest of the body.
+    private void copyPayload(FileChannel file, long length) throws IOException {
+        long position = 0;
+        if (pending.hasRemaining()) {
+            ByteBuffer slice = pending.duplicate();
+            slice.limit(slice.position() + (int) Math.min(slice.remaining(), length));
+            while (slice.hasRemaining()) {
+                position += file.write(slice, position);
+            }
+            pending.position(slice.position());
+        }
+        while (position < length) {
+            long transferred = file.transferFrom(channel, position, length - position);
+            if (transferred <= 0) {
+                throw new EOFException("input ended inside a file frame");
+            }
+            position += transferred;
+        }
+    }
+
+    private byte[] readPayload(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("frame too large");
+        }
+        byte[] payload = new byte[(int) length];
+        int offset = 0;
+        while (offset < payload.length) {
+            if (!pending.hasRemaining() && !fill()) {
+                throw new EOFException("input ended inside a frame");
+            }
+            int count = Math.min(pending.remaining(), payload.length - offset);
+            pending.get(payload, offset, count);
+            offset += count;
+        }
+        return payload;
+    }
+
+    private boolean fill() throws IOException {
+        pending.compact();
+        try {
+            return channel.read(pending) > 0;
+        } finally {
+            pending.flip();
+        }
+    }
+
+    static final class Frame {
+        final char type;
+        final String argument;
+        final byte[] payload;
+        // Where a file frame was staged, or the staged batch a run or test frame closes; may be null.
+        final Path dir;
+
+        Frame(char type, String argument, byte[] payload) {
+            this(type, argument, payload, null);
+        }
+
+        Frame(char type, String argument, byte[] payload, Path dir) {
+            this.type = type;
+            this.argument = argument;
+            this.payload = payload;
+            this.dir = dir;
+        }
+    }
+}
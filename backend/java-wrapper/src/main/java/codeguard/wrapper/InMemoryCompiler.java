@@ -0,0 +1,250 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.poolThreads;
+import static codeguard.wrapper.InteractiveWrapper.resolveSafePath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles session sources with the JDK compiler inside this JVM. Sources are read from
+ * memory and class files are collected in memory, then written to the session directory
+ * only because the run step still forks a separate JVM that loads them from disk. Classes
+ * already in the session directory resolve the files that are not being recompiled.
+ */
+final class InMemoryCompiler {
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+    private static final List<String> OPTIONS = List.of("-g:none", "-proc:none");
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // One thread per compile slot plus the warm-up; a full queue falls back to the forked javac.
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(Scheduler.COMPILE_SLOTS,
+            Scheduler.COMPILE_SLOTS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Scheduler.COMPILE_SLOTS + 1),
+            poolThreads("in-process-javac"));
+    // javac ignores interrupts, so a timed-out compile keeps its thread until it finishes on its own.
+    private static final Set<Attempt> STUCK = ConcurrentHashMap.newKeySet();
+
+    static {
+        ((ThreadPoolExecutor) EXECUTOR).allowCoreThreadTimeOut(true);
+    }
+
+    /** Loads and JIT-warms javac in the background so the first real compile is not cold. */
+    static void warmUpAsync() {
+        if (COMPILER == null) {
+            return;
+        }
+        try {
+            EXECUTOR.submit(() -> {
+                try {
+                    compileToMemory(Map.of("__Warmup.java",
+                            "public class __Warmup { public static void main(String[] a) {} }"), null);
+                } catch (IOException | RuntimeException ignored) {
+                    // Warm-up is best effort; the real compile reports its own failures.
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // The compile slots are already busy, which warms javac just as well.
+        }
+    }
+
+    /**
+     * Returns null when the in-process path cannot be used, so the caller can fall back to
+     * the forked javac. Compilation errors and timeouts are reported as a failed result.
+     * While a timed-out compile is still running, every compile goes to the forked javac,
+     * which can be killed.
+     */
+    static CompileResult compile(Path dir, Map<String, String> sources, int timeoutSeconds) {
+        STUCK.removeIf(attempt -> attempt.finished);
+        if (COMPILER == null || sources.isEmpty() || !STUCK.isEmpty()) {
+            return null;
+        }
+
+        Attempt attempt = new Attempt();
+        Future<MemoryOutput> future;
+        try {
+            future = EXECUTOR.submit(() -> {
+                attempt.start();
+                try {
+                    return compileToMemory(sources, dir);
+                } finally {
+                    attempt.finished = true;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        MemoryOutput output;
+        try {
+            output = future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            if (!attempt.finished) {
+                STUCK.add(attempt);
+            }
+            return new CompileResult(false, "Compilation timed out after " + timeoutSeconds + " seconds.\n",
+                    "in-process", attempt.cpuMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+
+        if (!output.success) {
+            return new CompileResult(false, output.diagnostics, "in-process", output.cpuMillis);
+        }
+
+        try {
+            for (Map.Entry<String, byte[]> entry : output.classes.entrySet()) {
+                Path classFile = resolveSafePath(dir, entry.getKey().replace('.', '/') + ".class");
+                Path parent = classFile.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                Files.write(classFile, entry.getValue());
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return new CompileResult(true, output.diagnostics, "in-process", output.cpuMillis);
+    }
+
+    /** The pool thread a compile ran on, so a timeout can still report the CPU it used. */
+    private static final class Attempt {
+        volatile Thread thread;
+        volatile long cpuStart;
+        volatile boolean finished;
+
+        void start() {
+            cpuStart = THREADS.getCurrentThreadCpuTime();
+            thread = Thread.currentThread();
+        }
+
+        long cpuMillis() {
+            Thread current = thread;
+            long cpuNow = current == null ? -1 : THREADS.getThreadCpuTime(current.getId());
+            return cpuNow < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(cpuNow - cpuStart);
+        }
+    }
+
+    private static MemoryOutput compileToMemory(Map<String, String> sources, Path classPath) throws IOException {
+        long cpuBefore = THREADS.getCurrentThreadCpuTime();
+        StringWriter diagnostics = new StringWriter();
+        List<JavaFileObject> units = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            units.add(new MemorySource(entry.getKey(), entry.getValue()));
+        }
+
+        StandardJavaFileManager standard = COMPILER.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        // Keep the wrapper's own classes out of the user's compile classpath, and never compile
+        // session sources implicitly: only the files handed in are compiled.
+        standard.setLocation(StandardLocation.CLASS_PATH,
+                classPath == null ? List.of() : List.of(classPath.toFile()));
+        standard.setLocation(StandardLocation.SOURCE_PATH, List.of());
+        try (MemoryFileManager fileManager = new MemoryFileManager(standard)) {
+            boolean success = COMPILER.getTask(diagnostics, fileManager, null, OPTIONS, null, units).call();
+            long cpuMillis = TimeUnit.NANOSECONDS.toMillis(THREADS.getCurrentThreadCpuTime() - cpuBefore);
+            return new MemoryOutput(success, diagnostics.toString(), fileManager.classes, cpuMillis);
+        }
+    }
+
+    private static final class MemoryOutput {
+        final boolean success;
+        final String diagnostics;
+        final Map<String, byte[]> classes;
+        final long cpuMillis;
+
+        MemoryOutput(boolean success, String diagnostics, Map<String, ByteArrayOutputStream> classes,
+                long cpuMillis) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.cpuMillis = cpuMillis;
+            this.classes = new LinkedHashMap<>();
+            classes.forEach((name, bytes) -> this.classes.put(name, bytes.toByteArray()));
+        }
+    }
+
+    private static final class MemorySource extends SimpleJavaFileObject {
+        private final String relativePath;
+        private final String content;
+
+        MemorySource(String relativePath, String content) {
+            super(java.net.URI.create("string:///" + relativePath), Kind.SOURCE);
+            this.relativePath = relativePath;
+            this.content = content;
+        }
+
+        @Override
+        public String getName() {
+            // Matches the relative paths the forked javac prints in its diagnostics.
+            return relativePath;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    private static final class MemoryClass extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytes;
+
+        MemoryClass(String className, ByteArrayOutputStream bytes) {
+            super(java.net.URI.create("mem:///" + className.replace('.', '/') + ".class"), Kind.CLASS);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+    }
+
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ByteArrayOutputStream> classes = new LinkedHashMap<>();
+
+        MemoryFileManager(StandardJavaFileManager delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+                JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+            if (kind != JavaFileObject.Kind.CLASS) {
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            classes.put(className, bytes);
+            return new MemoryClass(className, bytes);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.listJavaFiles;
+import static codeguard.wrapper.InteractiveWrapper.resolveSafePath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * What the last compile of a session produced, so the next batch only recompiles the files
+ * whose content hash changed plus every file depending on them, transitively. Dependencies
+ * come from the compiler's own output: the constant pool of each class file names the classes
+ * it uses. Anything the class files cannot tell reliably falls back to a full rebuild: files
+ * added or removed, a changed compile-time constant (javac inlines those into other classes),
+ * a new top-level type, or a class file that cannot be traced back to a source.
+ */
+final class IncrementalBuild {
+    // Per source path: content hash ("" after a failed compile), class names, references, constants.
+    private final Map<String, String> hashes = new HashMap<>();
+    private final Map<String, Set<String>> outputs = new HashMap<>();
+    private final Map<String, Set<String>> references = new HashMap<>();
+    private final Map<String, String> constants = new HashMap<>();
+    // Per class file: hash of the bytes the compiler wrote, so files a program replaced are caught.
+    private final Map<String, String> classHashes = new HashMap<>();
+    private boolean valid;
+
+    /** Files to compile, in path order. */
+    static final class Plan {
+        final boolean full;
+        final Map<String, String> sources;
+        // Files whose content changed; the rest of {@link #sources} are their dependents.
+        final int changed;
+
+        Plan(boolean full, Map<String, String> sources, int changed) {
+            this.full = full;
+            this.sources = sources;
+            this.changed = changed;
+        }
+
+        static Plan all(Map<String, String> sources) {
+            return new Plan(true, new TreeMap<>(sources), sources.size());
+        }
+    }
+
+    /**
+     * Deletes the sources a batch no longer has and the class files of everything about to be
+     * recompiled, and returns what to compile. An empty plan means the classes are up to date.
+     */
+    Plan plan(Path dir, Map<String, String> sources) throws IOException {
+        for (String path : listJavaFiles(dir)) {
+            if (!sources.containsKey(path)) {
+                Files.deleteIfExists(resolveSafePath(dir, path));
+            }
+        }
+        if (!valid || !hashes.keySet().equals(sources.keySet())) {
+            return fullPlan(dir, sources);
+        }
+
+        Set<String> compile = new TreeSet<>();
+        sources.forEach((path, source) -> {
+            if (!SourceIndex.contentKey(source).equals(hashes.get(path))) {
+                compile.add(path);
+            }
+        });
+        int changed = compile.size();
+        Set<String> affected = new HashSet<>();
+        compile.forEach(path -> affected.addAll(outputs.get(path)));
+        boolean grew = !compile.isEmpty();
+        while (grew) {
+            grew = false;
+            for (String path : sources.keySet()) {
+                if (!compile.contains(path) && !Collections.disjoint(references.get(path), affected)) {
+                    compile.add(path);
+                    affected.addAll(outputs.get(path));
+                    grew = true;
+                }
+            }
+        }
+
+        for (String path : sources.keySet()) {
+            if (compile.contains(path)) {
+                continue;
+            }
+            for (String name : outputs.get(path)) {
+                if (!matches(dir, name)) {
+                    return fullPlan(dir, sources);
+                }
+            }
+        }
+        for (String path : compile) {
+            for (String name : outputs.get(path)) {
+                Files.deleteIfExists(classFile(dir, name));
+            }
+        }
+        Map<String, String> files = new TreeMap<>();
+        compile.forEach(path -> files.put(path, sources.get(path)));
+        return new Plan(false, files, changed);
+    }
+
+    /** Forgets everything and deletes every class file, so all of {@code sources} is compiled. */
+    Plan fullPlan(Path dir, Map<String, String> sources) throws IOException {
+        valid = false;
+        hashes.clear();
+        outputs.clear();
+        references.clear();
+        constants.clear();
+        classHashes.clear();
+        deleteClassesExcept(dir, Set.of());
+        return Plan.all(sources);
+    }
+
+    /**
+     * Records the class files a successful compile of {@code plan} wrote. Returns null, or why
+     * the result cannot be trusted; the session then needs a {@link #fullPlan}.
+     */
+    String record(Path dir, Plan plan, Map<String, String> sources) throws IOException {
+        Set<String> kept = keptClasses(plan, sources);
+        Map<String, String> owners = new HashMap<>();
+        plan.sources.forEach((path, source) -> {
+            SourceIndex.Entry entry = SourceIndex.lookup(source);
+            String prefix = entry.packageName == null ? "" : entry.packageName.replace('.', '/') + "/";
+            entry.types.forEach(type -> owners.put(prefix + type, path));
+        });
+
+        Map<String, Set<String>> newOutputs = new HashMap<>();
+        Map<String, Set<String>> newReferences = new HashMap<>();
+        Map<String, Set<String>> newConstants = new HashMap<>();
+        for (String path : plan.sources.keySet()) {
+            newOutputs.put(path, new TreeSet<>());
+            newReferences.put(path, new TreeSet<>());
+            newConstants.put(path, new TreeSet<>());
+        }
+        Map<String, String> newHashes = new HashMap<>();
+        valid = false;
+        for (String name : listClasses(dir)) {
+            if (kept.contains(name)) {
+                if (!matches(dir, name)) {
+                    return "class file changed " + name;
+                }
+                continue;
+            }
+            byte[] bytes;
+            ClassFileInfo info;
+            try {
+                bytes = Files.readAllBytes(classFile(dir, name));
+                info = ClassFileInfo.read(bytes);
+            } catch (IOException e) {
+                return "unreadable class " + name + ": " + e.getMessage();
+            }
+            String owner = ownerOf(name, owners);
+            if (owner == null || !name.equals(info.name)) {
+                return "no source for " + name;
+            }
+            newOutputs.get(owner).add(name);
+            newHashes.put(name, SourceIndex.contentKey(bytes));
+            newReferences.get(owner).addAll(info.references);
+            info.constants.forEach(constant -> newConstants.get(owner).add(name + "." + constant));
+        }
+
+        for (String path : plan.sources.keySet()) {
+            String constantValues = String.join(",", newConstants.get(path));
+            if (!plan.full && constants.containsKey(path) && !constants.get(path).equals(constantValues)) {
+                return "constants changed in " + path;
+            }
+            if (!plan.full) {
+                for (String name : newOutputs.get(path)) {
+                    if (name.indexOf('$') < 0 && !outputs.get(path).contains(name)) {
+                        return "new type " + name;
+                    }
+                }
+            }
+            hashes.put(path, SourceIndex.contentKey(plan.sources.get(path)));
+            outputs.getOrDefault(path, Set.of()).forEach(classHashes::remove);
+            outputs.put(path, newOutputs.get(path));
+            references.put(path, newReferences.get(path));
+            constants.put(path, constantValues);
+        }
+        classHashes.putAll(newHashes);
+        valid = true;
+        return null;
+    }
+
+    /**
+     * The class files recorded for the session, keyed by path relative to {@code dir}; null
+     * when any of them no longer holds the bytes the compiler wrote.
+     */
+    Map<String, byte[]> compiledClasses(Path dir) throws IOException {
+        Map<String, byte[]> classes = new TreeMap<>();
+        for (Map.Entry<String, String> entry : classHashes.entrySet()) {
+            Path file = classFile(dir, entry.getKey());
+            byte[] bytes = Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) ? Files.readAllBytes(file) : null;
+            if (bytes == null || !entry.getValue().equals(SourceIndex.contentKey(bytes))) {
+                return null;
+            }
+            classes.put(entry.getKey() + ".class", bytes);
+        }
+        return classes;
+    }
+
+    /** True when {@code file} under {@code dir} is a class file the compiler wrote and nothing changed since. */
+    boolean isCompiled(Path dir, Path file) {
+        String relative = dir.relativize(file).toString().replace(File.separatorChar, '/');
+        try {
+            return relative.endsWith(".class")
+                    && matches(dir, relative.substring(0, relative.length() - ".class".length()));
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * After a failed compile, removes whatever partial output it left and marks its files as
+     * changed so the next batch compiles them, and their dependents, again.
+     */
+    void recordFailure(Path dir, Plan plan) throws IOException {
+        if (plan.full) {
+            classHashes.clear();
+            deleteClassesExcept(dir, Set.of());
+            return;
+        }
+        Set<String> kept = new HashSet<>();
+        outputs.forEach((path, names) -> {
+            if (!plan.sources.containsKey(path)) {
+                kept.addAll(names);
+            }
+        });
+        deleteClassesExcept(dir, kept);
+        classHashes.keySet().retainAll(kept);
+        plan.sources.keySet().forEach(path -> hashes.put(path, ""));
+    }
+
+    private Set<String> keptClasses(Plan plan, Map<String, String> sources) {
+        Set<String> kept = new HashSet<>();
+        if (!plan.full) {
+            sources.keySet().stream()
+                    .filter(path -> !plan.sources.containsKey(path))
+                    .forEach(path -> kept.addAll(outputs.get(path)));
+        }
+        return kept;
+    }
+
+    // Outer$Inner$1 belongs to the file declaring Outer$Inner, or failing that Outer.
+    private static String ownerOf(String name, Map<String, String> owners) {
+        String candidate = name;
+        while (true) {
+            String owner = owners.get(candidate);
+            int dollar = candidate.lastIndexOf('$');
+            if (owner != null || dollar <= candidate.lastIndexOf('/') + 1) {
+                return owner;
+            }
+            candidate = candidate.substring(0, dollar);
+        }
+    }
+
+    private boolean matches(Path dir, String name) throws IOException {
+        String expected = classHashes.get(name);
+        Path file = classFile(dir, name);
+        return expected != null && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)
+                && expected.equals(SourceIndex.contentKey(Files.readAllBytes(file)));
+    }
+
+    private static void deleteClassesExcept(Path dir, Set<String> kept) throws IOException {
+        for (String name : listClasses(dir)) {
+            if (!kept.contains(name)) {
+                Files.deleteIfExists(classFile(dir, name));
+            }
+        }
+    }
+
+    // Internal names (a/b/C$D) of the class files under dir.
+    private static List<String> listClasses(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            return stream
+                    .filter(Files::isRegularFile)
+                    .map(path -> dir.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .filter(path -> path.endsWith(".class"))
+                    .map(path -> path.substring(0, path.length() - ".class".length()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Path classFile(Path dir, String name) throws IOException {
+        return resolveSafePath(dir, name + ".class");
+    }
+}
@@ -0,0 +1,1114 @@
+package codeguard.wrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Entry point of the Java runtime's interactive wrapper: serves one session on stdin and stdout,
+ * or many with {@code --server}, and runs the child JVMs started with {@code --warm-runner} and
+ * {@code --standby}. Sessions send source batches, which are compiled, run and graded here.
+ */
+public class InteractiveWrapper {
+    static final String FILE_START_SENTINEL = "__FILE_START__";
+    static final String RUN_SENTINEL = "__RUN_CODE__";
+    static final String PROFILE_SENTINEL = "__PROFILE__";
+    static final String RUN_TESTS_SENTINEL = "__RUN_TESTS__";
+    static final String END_TESTS_SENTINEL = "__END_TESTS__";
+    static final String CANCEL_SENTINEL = "__CANCEL__";
+    private static final int TIMEOUT_SECONDS = 60;
+    private static final String CPU_LIMIT = "15";
+    static final int SIGKILL = 9;
+    private static final int SIGXCPU = 24;
+    // Sets the CPU rlimit and execs the JVM, so the kernel enforces CPU_LIMIT without a shell.
+    private static final String PRLIMIT = Stream.of("/usr/bin/prlimit", "/bin/prlimit")
+            .filter(path -> Files.isExecutable(Paths.get(path))).findFirst().orElse(null);
+    static final String SERVER_LOG_PREFIX = "__SERVER_LOG__";
+    private static final String RUN_STATS_PREFIX = "__RUN_STATS__";
+    // Tags trailers printed outside any session, such as at startup, in a wrapper serving one session.
+    private static final String PROCESS_NONCE = stringFromEnv("JAVA_TRAILER_NONCE", "");
+    private static final String COMPILE_MODE_IN_PROCESS = "inprocess";
+    private static final String COMPILE_MODE_FORK = "fork";
+    private static final String RUN_MODE_WARM = "warm";
+    static final String WARM_RUNNER_FLAG = "--warm-runner";
+    static final String STANDBY_FLAG = "--standby";
+    private static final String SERVER_FLAG = "--server";
+    private static final String BULK_FLAG = "--bulk";
+
+    // ANSI Colors
+    static final String RED = "\033[91m";
+    private static final String GREEN = "\033[92m";
+    static final String YELLOW = "\033[93m";
+    static final String CYAN = "\033[96m";
+    static final String RESET = "\033[0m";
+
+    // The session served by the current thread and the threads it starts; see Session.
+    static final InheritableThreadLocal<Session> CURRENT_SESSION = new InheritableThreadLocal<>();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && WARM_RUNNER_FLAG.equals(args[0])) {
+            WarmRunner.childMain(args[1]);
+            return;
+        }
+        if (args.length == 2 && STANDBY_FLAG.equals(args[0])) {
+            StandbyPool.childMain(args[1]);
+            return;
+        }
+
+        Path workspace = Workspace.init();
+        RunCgroup.init();
+
+        if (useInProcessCompiler()) {
+            InMemoryCompiler.warmUpAsync();
+        }
+        if (CdsArchives.isStale()) {
+            serverLog("CDS archives were built for a different JDK; starting child JVMs without them");
+        }
+
+        if (args.length == 2 && SERVER_FLAG.equals(args[0])) {
+            SessionServer.serve(workspace, Paths.get(args[1]));
+            return;
+        }
+        if (args.length == 1 && BULK_FLAG.equals(args[0])) {
+            try {
+                BulkGrader.grade(workspace, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+            } finally {
+                Workspace.awaitIdle();
+            }
+            return;
+        }
+
+        Session session = new Session(workspace, Workspace.newSessionDir(), System.out, System.err,
+                Charset.defaultCharset(), false);
+        session.trailerNonce = PROCESS_NONCE;
+        CURRENT_SESSION.set(session);
+        try {
+            serveSession(session, Channels.newChannel(new FileInputStream(FileDescriptor.in)));
+        } finally {
+            // The janitor is a daemon thread; let it delete this session's directory before the JVM exits.
+            Workspace.awaitIdle();
+        }
+    }
+
+    /** Negotiates the protocol on {@code input} and handles its batches until end of input. */
+    static void serveSession(Session session, ReadableByteChannel input) throws IOException, InterruptedException {
+        FramedInput stdin = new FramedInput(input);
+        try {
+            byte[] firstLine = stdin.readLine();
+            String handshake = firstLine == null ? "" : new String(firstLine, StandardCharsets.UTF_8).trim();
+            Matcher nonce = FramedInput.HANDSHAKE_NONCE.matcher(handshake);
+            boolean framed = FramedInput.HANDSHAKE.equals(handshake) || nonce.matches();
+            if (framed) {
+                if (nonce.matches()) {
+                    session.trailerNonce = nonce.group(1);
+                }
+                out().println(FramedInput.HANDSHAKE);
+                out().flush();
+            } else if (session.shared) {
+                // Sentinel mode lets programs read the wrapper's own stdin, which a shared server does not have.
+                err().println(RED + "❌ Server mode requires the framed protocol (" + FramedInput.HANDSHAKE + ")." + RESET);
+                return;
+            }
+            if (RUN_MODE_WARM.equalsIgnoreCase(stringFromEnv("JAVA_RUN_MODE", "cold"))) {
+                session.warmRunner = WarmRunner.spawn(session.workspace, session.dir);
+            } else if (StandbyPool.isEnabled()) {
+                session.standby = new StandbyPool(session.workspace, session.dir);
+            }
+
+            if (framed) {
+                runFramedSession(session.workspace, session.dir, stdin);
+            } else {
+                InputStream replay = new ByteArrayInputStream(firstLine == null ? new byte[0] : firstLine);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new SequenceInputStream(replay, stdin.remainder())));
+                runSentinelSession(session.workspace, session.dir, new SentinelInput(reader, session.control));
+            }
+        } finally {
+            if (session.warmRunner != null) {
+                session.warmRunner.shutdown();
+            }
+            if (session.standby != null) {
+                session.standby.shutdown();
+            }
+            Workspace.release(session.dir);
+        }
+    }
+
+    static Session session() {
+        return CURRENT_SESSION.get();
+    }
+
+    // Threads of shared pools outlive the session that started them, so they do not inherit it.
+    static ThreadFactory poolThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(null, runnable, name, 0, false);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Session output: the process's own stdout/stderr, or the client connection in server mode.
+    static PrintStream out() {
+        Session session = CURRENT_SESSION.get();
+        return session == null ? System.out : session.out;
+    }
+
+    static PrintStream err() {
+        Session session = CURRENT_SESSION.get();
+        return session == null ? System.err : session.err;
+    }
+
+    private static void runSentinelSession(Path workspace, Path sessionDir, SentinelInput input)
+            throws InterruptedException {
+        boolean batchStarted = false;
+        List<String> currentFileBuffer = new ArrayList<>();
+        // Sources of the current batch, keyed by normalized relative path, for in-process compilation.
+        Map<String, String> sessionSources = new LinkedHashMap<>();
+        String currentFileName = "Main.java";
+        String line;
+
+        while ((line = input.readLine()) != null) {
+            String trimmed = line.trim();
+
+            if (trimmed.startsWith(FILE_START_SENTINEL)) {
+                if (!batchStarted) {
+                    clearRunArtifacts(sessionDir);
+                    sessionSources.clear();
+                    batchStarted = true;
+                }
+
+                // Save previous file if code existed
+                if (!currentFileBuffer.isEmpty()) {
+                    saveFileSafely(sessionDir, currentFileName, currentFileBuffer, sessionSources);
+                    currentFileBuffer.clear();
+                }
+                currentFileName = normalizeJavaFileName(trimmed.substring(FILE_START_SENTINEL.length()).trim());
+                continue;
+            }
+
+            if (trimmed.startsWith(RUN_TESTS_SENTINEL)) {
+                // __RUN_TESTS__ [fail_fast], then one TSV test case per line until __END_TESTS__.
+                saveFileSafely(sessionDir, currentFileName, currentFileBuffer, sessionSources);
+                currentFileBuffer.clear();
+                boolean failFast = "1".equals(trimmed.substring(RUN_TESTS_SENTINEL.length()).trim());
+                List<String> testLines = new ArrayList<>();
+                while ((line = input.readLine()) != null && !END_TESTS_SENTINEL.equals(line.trim())) {
+                    testLines.add(line);
+                }
+
+                runTestSession(workspace, sessionDir, currentFileName, sessionSources, testLines, failFast);
+
+                out().println(END_TESTS_SENTINEL);
+                out().flush();
+                currentFileName = "Main.java";
+                batchStarted = false;
+                continue;
+            }
+
+            if (RUN_SENTINEL.equals(trimmed) || PROFILE_SENTINEL.equals(trimmed)) {
+                // Save the last file before running
+                saveFileSafely(sessionDir, currentFileName, currentFileBuffer, sessionSources);
+                currentFileBuffer.clear();
+
+                // Execute
+                runControlled(workspace, sessionDir, currentFileName, sessionSources, PROFILE_SENTINEL.equals(trimmed));
+
+                out().println("\n" + CYAN + "--- Execution Finished ---" + RESET + "\n");
+                out().flush();
+                // Reset to default name for next batch
+                currentFileName = "Main.java";
+                batchStarted = false;
+            } else {
+                currentFileBuffer.add(line);
+            }
+        }
+    }
+
+    /**
+     * Framed counterpart of {@link #runSentinelSession}. Files arrive staged on disk, so a batch is
+     * only moved into the session directory once its run or test frame is received. Each batch is
+     * staged in its own directory, which the reader may already be filling with the next one's
+     * files while this one runs.
+     */
+    private static void runFramedSession(Path workspace, Path sessionDir, FramedInput stdin)
+            throws IOException, InterruptedException {
+        Path staging = Workspace.newStagingDir();
+        try {
+            BlockingQueue<FramedInput.Frame> frames = stdin.startReader(staging, session().control);
+            List<String> stagedFiles = new ArrayList<>();
+            Map<String, String> sessionSources = new LinkedHashMap<>();
+
+            while (true) {
+                FramedInput.Frame frame = frames.take();
+                if (frame.type == FramedInput.EOF) {
+                    return;
+                }
+                if (frame.type == FramedInput.FILE) {
+                    stagedFiles.remove(frame.argument);
+                    stagedFiles.add(frame.argument);
+                    continue;
+                }
+
+                clearRunArtifacts(sessionDir);
+                sessionSources.clear();
+                String currentFileName = "Main.java";
+                for (String fileName : stagedFiles) {
+                    try {
+                        Path target = resolveSafePath(sessionDir, fileName);
+                        Path parent = target.getParent();
+                        if (parent != null) {
+                            Files.createDirectories(parent);
+                        }
+                        Files.move(resolveSafePath(frame.dir, fileName), target, StandardCopyOption.REPLACE_EXISTING);
+                        String content = Files.readString(target, StandardCharsets.UTF_8);
+                        sessionSources.put(fileName, content);
+                        SourceIndex.lookup(content);
+                        currentFileName = fileName;
+                    } catch (IOException e) {
+                        err().println(RED + "❌ Error saving " + fileName + ": " + e.getMessage() + RESET);
+                    }
+                }
+                stagedFiles.clear();
+                if (frame.dir != null) {
+                    Workspace.release(frame.dir);
+                }
+
+                if (frame.type == FramedInput.RUN || frame.type == FramedInput.PROFILE) {
+                    runControlled(workspace, sessionDir, currentFileName, sessionSources,
+                            frame.type == FramedInput.PROFILE);
+                    out().println("\n" + CYAN + "--- Execution Finished ---" + RESET + "\n");
+                } else {
+                    List<String> testLines = Arrays.asList(
+                            new String(frame.payload, StandardCharsets.UTF_8).split("\n"));
+                    runTestSession(workspace, sessionDir, currentFileName, sessionSources, testLines,
+                            "1".equals(frame.argument));
+                    out().println(END_TESTS_SENTINEL);
+                }
+                out().flush();
+            }
+        } finally {
+            Workspace.release(staging);
+        }
+    }
+
+    static String normalizeJavaFileName(String fileName) {
+        String normalized = (fileName == null ? "" : fileName.trim()).replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        if (normalized.isEmpty()) {
+            normalized = "Main.java";
+        }
+        if (!normalized.endsWith(".java")) {
+            normalized += ".java";
+        }
+        return normalized;
+    }
+
+    static Path resolveSafePath(Path baseDir, String relativePath) throws IOException {
+        Path resolved = baseDir.resolve(relativePath).normalize();
+        if (!resolved.startsWith(baseDir)) {
+            throw new IOException("Invalid path: " + relativePath);
+        }
+        return resolved;
+    }
+
+    private static void saveFileSafely(Path dir, String fileName, List<String> buffer, Map<String, String> sources) {
+        try {
+            String normalized = normalizeJavaFileName(fileName);
+            String content = String.join("\n", buffer);
+            saveFile(dir, normalized, content);
+            sources.put(normalized, content);
+            SourceIndex.lookup(content);
+        } catch (IOException e) {
+            err().println(RED + "❌ Error saving " + fileName + ": " + e.getMessage() + RESET);
+        }
+    }
+
+    static void saveFile(Path dir, String fileName, String content) throws IOException {
+        Path filePath = resolveSafePath(dir, normalizeJavaFileName(fileName));
+        Path parent = filePath.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static List<String> listJavaFiles(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            return stream
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(".java"))
+                    .map(path -> dir.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Picks the class to run: a main class in the preferred file, then an applet in it, then the
+     * first main class and finally the first applet across the session's files in path order.
+     * Each file is looked up in {@link SourceIndex}, so unchanged files are not parsed again.
+     */
+    private static RunTarget resolveRunTarget(Path dir, String preferredFile, Map<String, String> sources) {
+        try {
+            Map<String, SourceIndex.Entry> index = SourceIndex.forSession(dir, sources);
+            SourceIndex.Entry preferred = index.get(normalizeJavaFileName(preferredFile));
+            if (preferred != null && preferred.mainClass() != null) {
+                return new RunTarget(preferred.mainClass(), false);
+            }
+            if (preferred != null && preferred.appletClass() != null) {
+                return new RunTarget(preferred.appletClass(), true);
+            }
+            for (SourceIndex.Entry entry : index.values()) {
+                if (entry.mainClass() != null) {
+                    return new RunTarget(entry.mainClass(), false);
+                }
+            }
+            for (SourceIndex.Entry entry : index.values()) {
+                if (entry.appletClass() != null) {
+                    return new RunTarget(entry.appletClass(), true);
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return null;
+    }
+
+    static int intFromEnv(String key, int fallback) {
+        String raw = System.getenv(key);
+        if (raw == null || raw.isBlank()) {
+            return fallback;
+        }
+
+        try {
+            int parsed = Integer.parseInt(raw.trim());
+            return parsed > 0 ? parsed : fallback;
+        } catch (NumberFormatException ignored) {
+            return fallback;
+        }
+    }
+
+    static String stringFromEnv(String key, String fallback) {
+        String raw = System.getenv(key);
+        return raw == null || raw.isBlank() ? fallback : raw.trim();
+    }
+
+    private static boolean useInProcessCompiler() {
+        return !COMPILE_MODE_FORK.equalsIgnoreCase(stringFromEnv("JAVA_COMPILE_MODE", COMPILE_MODE_IN_PROCESS));
+    }
+
+    // Lines with this prefix are picked up by socketService and logged instead of shown to the user.
+    static void serverLog(String message) {
+        printTrailer(SERVER_LOG_PREFIX, message);
+    }
+
+    /**
+     * Prints {@code prefix:<nonce> text} on a line of its own. socketService only takes whole lines
+     * tagged with the session's nonce, so a program printing the prefix cannot forge one. Outside a
+     * session, such as while the wrapper starts, the nonce it was started with is used.
+     */
+    private static void printTrailer(String prefix, String text) {
+        Session session = session();
+        PrintStream out = out();
+        synchronized (out) {
+            String nonce = session == null ? PROCESS_NONCE : session.trailerNonce;
+            if (session != null && !session.lines.atLineStart()) {
+                out.println();
+            }
+            out.println(prefix + (nonce.isEmpty() ? "" : ":" + nonce) + " " + text);
+        }
+        out.flush();
+    }
+
+    /** {@link #executeSession} as the next run of the session's {@link RunControl}. */
+    private static void runControlled(Path workspace, Path dir, String mainFileHint, Map<String, String> sources,
+            boolean profiled) {
+        RunControl control = session().control;
+        control.begin();
+        try {
+            executeSession(workspace, dir, mainFileHint, sources, profiled);
+        } finally {
+            control.end();
+        }
+    }
+
+    /**
+     * Compiles and runs the batch in the session directory. A {@code profiled} run always gets a
+     * fresh JVM, recorded by {@link JfrProfile}, and prints the profile after the program's output.
+     */
+    private static void executeSession(Path workspace, Path dir, String mainFileHint, Map<String, String> sources,
+            boolean profiled) {
+        long startNanos = System.nanoTime();
+        RunStats stats = new RunStats();
+        try {
+            String full = Workspace.admit();
+            if (full != null) {
+                err().println(RED + "❌ " + full + RESET);
+                return;
+            }
+            RunTarget runTarget = resolveRunTarget(dir, mainFileHint, sources);
+            stats.resolveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (runTarget == null) {
+                err().println(RED + "❌ No class with a main method or applet entry was found." + RESET);
+                return;
+            }
+
+            if (sources.isEmpty()) {
+                err().println(RED + "❌ No Java files found to compile." + RESET);
+                return;
+            }
+
+            long compileStartNanos = System.nanoTime();
+            CompileResult compileResult = compileSession(dir, sources, runTarget);
+            stats.compiler = compileResult.compiler;
+            stats.compiled = compileResult.success;
+            stats.compileMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - compileStartNanos);
+            stats.compileCpuMillis = compileResult.cpuMillis;
+            stats.compiledFiles = compileResult.compiledFiles;
+            if (!compileResult.success) {
+                err().println(RED + "❌ Compilation Error:" + RESET);
+                err().println(compileResult.output);
+                return;
+            }
+
+            out().println(GREEN + "✅ Compilation successful" + RESET);
+
+            int executionTimeout = intFromEnv("EXECUTION_TIMEOUT", TIMEOUT_SECONDS);
+            Session session = session();
+            Scheduler.acquireRun();
+            long runStartNanos = System.nanoTime();
+            try {
+                if (session.control.isCancelled()) {
+                    // Stopped or replaced by a newer batch while compiling or waiting for a slot.
+                    stats.cancelled = true;
+                    err().println("\n" + YELLOW + "⏹️ Execution stopped." + RESET);
+                    return;
+                }
+                WarmRunner.Result result = null;
+                if (session.warmRunner != null && !profiled) {
+                    String warmMode = session.warmRunner.isFresh() ? "warm-first" : "warm";
+                    result = session.warmRunner.run(dir, runTarget, executionTimeout, Integer.parseInt(CPU_LIMIT));
+                    if (result == null) {
+                        serverLog("Warm runner unavailable, switching this session to cold runs");
+                        session.warmRunner.shutdown();
+                        session.warmRunner = null;
+                    } else {
+                        stats.mode = warmMode;
+                        stats.profile = session.warmRunner.profile.name;
+                        if (result.timedOut) {
+                            err().println("\n" + YELLOW + "⏱️ Code execution timed out!" + RESET);
+                        } else if (result.cpuLimitExceeded) {
+                            err().println("\n" + YELLOW + "⏱️ CPU time limit exceeded!" + RESET);
+                        }
+                        if (session.warmRunner.needsRecycle()) {
+                            serverLog("Recycling warm runner: " + session.warmRunner.recycleReason());
+                            session.warmRunner.shutdown();
+                            session.warmRunner = WarmRunner.spawn(workspace, dir);
+                        }
+                    }
+                }
+                if (result == null) {
+                    RunProfile profile = RunProfile.choose(runTarget.entryClass);
+                    RunCgroup cgroup = RunCgroup.create();
+                    Process standby = session.standby == null || profiled ? null
+                            : session.standby.launch(runTarget, profile, cgroup);
+                    stats.mode = profiled ? "profile" : standby != null ? "standby" : "cold";
+                    stats.profile = profile.name;
+                    stats.cgroup = cgroup != null;
+                    JfrProfile recording = profiled ? JfrProfile.create(workspace, dir) : null;
+                    try {
+                        result = runInFreshJvm(dir, runTarget, profile, executionTimeout, standby, cgroup, recording);
+                        if (recording != null && !session.control.isCancelled()) {
+                            recording.report();
+                        }
+                    } finally {
+                        if (recording != null) {
+                            recording.discard();
+                        }
+                    }
+                    if (!session.control.isCancelled() && !profiled) {
+                        // A stopped run says nothing about how long the program needs, and a
+                        // profiled one also counts the recorder's CPU.
+                        RunProfile.record(runTarget.entryClass, profile, result.cpuMillis);
+                    }
+                }
+                stats.cancelled = session.control.isCancelled();
+                if (stats.cancelled) {
+                    err().println("\n" + YELLOW + "⏹️ Execution stopped." + RESET);
+                }
+                stats.exitCode = result.exitCode;
+                stats.timedOut = result.timedOut;
+                stats.cpuLimitExceeded = result.cpuLimitExceeded;
+                stats.runCpuMillis = result.cpuMillis;
+                stats.peakRssKb = result.peakRssKb;
+            } finally {
+                stats.runMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStartNanos);
+                Scheduler.releaseRun();
+                if (session.standby != null) {
+                    // Booted now rather than during the run, so it does not compete with the program for CPU.
+                    session.standby.refill();
+                }
+            }
+        } catch (Exception e) {
+            err().println(RED + "❌ Error: " + e.getMessage() + RESET);
+        } finally {
+            // Whatever the program wrote counts against the workspace budget of the next batch.
+            Workspace.measureLater();
+            stats.totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            printTrailer(RUN_STATS_PREFIX, stats.fields());
+        }
+    }
+
+    /**
+     * Brings the session's class files up to date with {@code sources}. Only files that changed
+     * since the last compile and their dependents are compiled, falling back to every file when
+     * {@link IncrementalBuild} finds the result inconsistent. Whatever has to be compiled is looked
+     * up in the class cache first, then goes to the in-process compiler, then to a forked javac.
+     */
+    private static CompileResult compileSession(Path dir, Map<String, String> sources, RunTarget runTarget)
+            throws IOException, InterruptedException {
+        IncrementalBuild build = session().build;
+        IncrementalBuild.Plan plan = build.plan(dir, sources);
+        if (plan.sources.isEmpty()) {
+            return new CompileResult(true, "", "up-to-date", 0);
+        }
+
+        String cacheKey = ClassCache.isEnabled() ? ClassCache.key(sources, runTarget) : null;
+        if (cacheKey != null && ClassCache.restore(cacheKey, dir)) {
+            build.record(dir, IncrementalBuild.Plan.all(sources), sources);
+            return new CompileResult(true, "", "cache", 0);
+        }
+
+        int compileTimeout = intFromEnv("COMPILE_TIMEOUT", 20);
+        CompileResult compileResult = compileFiles(dir, plan.sources, compileTimeout);
+        String inconsistency = compileResult.success ? build.record(dir, plan, sources) : null;
+        if (inconsistency != null && !plan.full) {
+            serverLog("incremental build falling back to a full rebuild: " + inconsistency);
+            long cpuMillis = compileResult.cpuMillis;
+            plan = build.fullPlan(dir, sources);
+            compileResult = compileFiles(dir, plan.sources, compileTimeout);
+            compileResult.cpuMillis += cpuMillis;
+            inconsistency = compileResult.success ? build.record(dir, plan, sources) : null;
+        }
+        if (inconsistency != null) {
+            serverLog("incremental build off until the next full rebuild: " + inconsistency);
+        }
+        if (!compileResult.success) {
+            build.recordFailure(dir, plan);
+        }
+        if (!plan.full) {
+            serverLog("incremental build compiled=" + plan.sources.size() + "/" + sources.size()
+                    + " changed=" + plan.changed);
+        }
+        compileResult.compiledFiles = plan.sources.size();
+
+        // Only a clean full compile is published: an incremental one reuses classes from earlier runs.
+        if (compileResult.success && cacheKey != null && plan.full && inconsistency == null) {
+            Map<String, byte[]> classes = build.compiledClasses(dir);
+            if (classes != null) {
+                ClassCache.publish(cacheKey, classes);
+            }
+        }
+        return compileResult;
+    }
+
+    private static CompileResult compileFiles(Path dir, Map<String, String> files, int compileTimeout)
+            throws IOException, InterruptedException {
+        CompileResult compileResult = null;
+        Scheduler.acquireCompile();
+        try {
+            if (useInProcessCompiler()) {
+                compileResult = InMemoryCompiler.compile(dir, files, compileTimeout);
+                if (compileResult == null) {
+                    serverLog("In-process compilation unavailable, falling back to forked javac");
+                }
+            }
+            if (compileResult == null) {
+                compileResult = compileWithJavac(dir, new ArrayList<>(files.keySet()), compileTimeout);
+            }
+        } finally {
+            Scheduler.releaseCompile();
+        }
+        return compileResult;
+    }
+
+    /**
+     * Grades a batch of test cases given as the harness TSV payload
+     * ({@code id, hidden, time_ms, expected_b64, input_b64}). The program is compiled once and every
+     * case runs in a fresh class loader inside one test runner JVM, so static state does not leak
+     * between cases and the JVM starts once per batch. The runner is held to {@code JAVA_RUN_MEMORY_MB}
+     * (see {@link WarmRunner#spawnForTests}), so running out of memory is exit 137, and memory_kb is
+     * the case's heap peak. A case that times out or runs out of memory, or that leaves threads or
+     * heap behind, gets the next case a new runner. Results use the same {@code __RESULT__} lines
+     * and verdict rules as the shell harness, and nothing else is written to stdout in this mode.
+     */
+    static void runTestSession(Path workspace, Path dir, String mainFileHint, Map<String, String> sources,
+            List<String> testLines, boolean failFast) {
+        List<TestCase> cases = new ArrayList<>();
+        for (String testLine : testLines) {
+            TestCase testCase = TestCase.parse(testLine);
+            if (testCase != null) {
+                cases.add(testCase);
+            }
+        }
+        if (cases.isEmpty()) {
+            return;
+        }
+
+        String full = Workspace.admit();
+        if (full != null) {
+            emitForAll(cases, 1, "runtime_error", full, failFast);
+            return;
+        }
+
+        WarmRunner runner = null;
+        boolean acquiredRunSlot = false;
+        try {
+            RunTarget runTarget = resolveRunTarget(dir, mainFileHint, sources);
+            if (runTarget == null || sources.isEmpty()) {
+                emitForAll(cases, 1, "runtime_error", "No class with a main method or applet entry was found.", failFast);
+                return;
+            }
+
+            CompileResult compileResult = compileSession(dir, sources, runTarget);
+            if (!compileResult.success) {
+                emitForAll(cases, 1, "compile_error", compileResult.output, failFast);
+                return;
+            }
+
+            Scheduler.acquireRun();
+            acquiredRunSlot = true;
+            long startNanos = System.nanoTime();
+            RunProfile profile = RunProfile.choose(runTarget.entryClass);
+            boolean verify = OutputVerifier.isEnabled();
+            runner = WarmRunner.spawnForTests(workspace, dir, profile);
+            for (TestCase testCase : cases) {
+                // Same rounding as the shell harness: whole seconds, at least one.
+                long timeoutSeconds = Math.max(1, (testCase.timeLimitMillis + 999) / 1000);
+                String expected = verify ? testCase.expected : null;
+                TestResult result = runner == null ? null
+                        : runner.runTest(dir, runTarget, TimeUnit.SECONDS.toMillis(timeoutSeconds), testCase.input,
+                                expected);
+                if (result == null) {
+                    if (runner != null) {
+                        serverLog("Test runner unavailable, running the remaining cases in fresh JVMs");
+                        runner.shutdown();
+                        runner = null;
+                    }
+                    result = runTestInFreshJvm(dir, runTarget, profile, timeoutSeconds, testCase.input, expected);
+                } else if (runner.needsRecycle()) {
+                    serverLog("Recycling test runner: " + runner.recycleReason());
+                    runner.shutdown();
+                    runner = WarmRunner.spawnForTests(workspace, dir, profile);
+                }
+                String status = emitResult(testCase, result, timeoutSeconds);
+                if (failFast && !"passed".equals(status)) {
+                    break;
+                }
+            }
+            serverLog("test batch cases=" + cases.size() + " profile=" + profile.name
+                    + " run_ms=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            serverLog("Test batch failed: " + e.getMessage());
+        } finally {
+            if (runner != null) {
+                runner.shutdown();
+            }
+            if (acquiredRunSlot) {
+                Scheduler.releaseRun();
+            }
+            Workspace.measureLater();
+        }
+    }
+
+    /**
+     * A fresh JVM that starts {@code target} through {@link Launcher}, to be run in the session
+     * directory. The wrapper's class path comes first, matching the one the user archive was
+     * dumped with; the session directory after it holds the user's classes.
+     */
+    private static ProcessBuilder launchCommand(RunTarget target, RunProfile profile, List<String> jvmFlags) {
+        List<String> command = userJvmCommand(profile, CdsArchives.USER);
+        command.addAll(jvmFlags);
+        command.addAll(List.of("-cp", WarmRunner.wrapperClassPath() + File.pathSeparator + ".",
+                Launcher.class.getName(), target.mode(), target.entryClass));
+        return new ProcessBuilder(command);
+    }
+
+    /**
+     * The start of the command line of a JVM that runs user code: java itself, so the process the
+     * wrapper supervises is the JVM, under {@code prlimit} where it is installed, so the kernel
+     * still stops the program at CPU_LIMIT should the wrapper die first.
+     */
+    static List<String> userJvmCommand(RunProfile profile, String archive) {
+        List<String> command = new ArrayList<>();
+        if (PRLIMIT != null) {
+            command.addAll(List.of(PRLIMIT, "--cpu=" + CPU_LIMIT, "--"));
+        }
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(profile.flags);
+        command.addAll(CdsArchives.jvmFlags(archive));
+        return command;
+    }
+
+    /**
+     * Runs one test case in its own JVM, for when the test runner cannot be used: in a run cgroup
+     * capped at {@code JAVA_RUN_MEMORY_MB}, or killed by its {@link ProcessSampler} once its RSS
+     * reaches that where the cgroup cannot be capped, so either way running out of memory ends the
+     * case with exit 137. Its stdout goes through an {@link OutputVerifier} when {@code expected}
+     * is given, and the process tree is killed at the first definitive mismatch.
+     */
+    private static TestResult runTestInFreshJvm(Path dir, RunTarget runTarget, RunProfile profile,
+            long timeoutSeconds, byte[] input, String expected) throws IOException, InterruptedException {
+        Path stderrFile = Files.createTempFile(dir, "stderr_", ".txt");
+        try {
+            RunCgroup cgroup = RunCgroup.create();
+            long memoryLimitKb = cgroup != null && cgroup.limitsMemory() ? 0
+                    : intFromEnv("JAVA_RUN_MEMORY_MB", 256) * 1024L;
+            ProcessBuilder runPb = launchCommand(runTarget, profile, List.of());
+            runPb.directory(dir.toFile());
+            runPb.redirectError(stderrFile.toFile());
+
+            long started = System.nanoTime();
+            Process runProc = runPb.start();
+            if (cgroup != null && !cgroup.add(runProc)) {
+                // Unbounded is not an option for a graded case; an error result beats a wrong verdict.
+                runProc.destroyForcibly();
+                cgroup.release();
+                throw new IOException("could not move the test JVM into its run cgroup");
+            }
+            ProcessSampler sampler = ProcessSampler.start(runProc, cgroup,
+                    TimeUnit.SECONDS.toMillis(Long.parseLong(CPU_LIMIT)), memoryLimitKb);
+            OutputVerifier stdout = new OutputVerifier(expected);
+            Thread stdoutPump = new Thread(() -> {
+                try (InputStream in = runProc.getInputStream()) {
+                    in.transferTo(stdout);
+                } catch (IOException ignored) {
+                    // The process is gone; what was read is kept.
+                }
+            }, "test-stdout");
+            stdoutPump.setDaemon(true);
+            stdoutPump.start();
+            try {
+                try (OutputStream stdin = runProc.getOutputStream()) {
+                    stdin.write(input);
+                } catch (IOException ignored) {
+                    // The program exited without reading all of its input.
+                }
+                long timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+                boolean finished;
+                while (!(finished = runProc.waitFor(20, TimeUnit.MILLISECONDS))) {
+                    if (stdout.mismatched() || System.nanoTime() - started >= timeoutNanos) {
+                        break;
+                    }
+                }
+                boolean stopped = !finished && stdout.mismatched();
+                sampler.killTree();
+                sampler.stop();
+                runProc.waitFor();
+                stdoutPump.join(1000);
+                stdout.finish();
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                int exitCode = finished ? runProc.exitValue() : -1;
+                // Besides the CPU limit, only the cgroup's OOM killer sends SIGKILL to a running case.
+                boolean outOfMemory = sampler.memoryLimitExceeded()
+                        || exitCode == 128 + SIGKILL && !sampler.cpuLimitExceeded();
+                return new TestResult(exitCode, !finished && !stopped, outOfMemory, stopped, stdout.matches(),
+                        elapsedMillis, sampler.peakRssKb(), stdout.output(), Files.readAllBytes(stderrFile));
+            } finally {
+                sampler.release();
+            }
+        } finally {
+            Files.deleteIfExists(stderrFile);
+        }
+    }
+
+    /*
+     * Verdicts follow the shell harness: timeout, then memory, then exit code, then output comparison.
+     * A program stopped at its first wrong line never reached any of those and is a wrong answer.
+     */
+    private static String emitResult(TestCase testCase, TestResult result, long timeoutSeconds) {
+        String stdout = trimTrailingNewlines(new String(result.stdout, StandardCharsets.UTF_8));
+        String stderr = trimTrailingNewlines(new String(result.stderr, StandardCharsets.UTF_8));
+        int exitCode = result.exitCode;
+        String status;
+        if (result.stopped) {
+            exitCode = 0;
+            status = "wrong_answer";
+        } else if (result.timedOut) {
+            exitCode = 124;
+            status = "time_limit_exceeded";
+            stderr = "Time limit exceeded (" + timeoutSeconds + "s)";
+        } else if (result.outOfMemory) {
+            exitCode = 137;
+            status = "memory_limit_exceeded";
+            stderr = "Memory limit exceeded (killed by OOM)";
+        } else if (exitCode != 0) {
+            status = "runtime_error";
+        } else {
+            boolean matches = result.outputMatches != null ? result.outputMatches
+                    : normalizeOutput(stdout).equals(normalizeOutput(testCase.expected));
+            status = matches ? "passed" : "wrong_answer";
+        }
+        printResultLine(testCase.id, exitCode, status, testCase.hidden, result.timeMillis, result.memoryKb,
+                stdout, stderr);
+        return status;
+    }
+
+    private static void emitForAll(List<TestCase> cases, int exitCode, String status, String stderr, boolean failFast) {
+        for (TestCase testCase : cases) {
+            printResultLine(testCase.id, exitCode, status, testCase.hidden, 0, 0, "", trimTrailingNewlines(stderr));
+            if (failFast) {
+                break;
+            }
+        }
+    }
+
+    private static void printResultLine(String id, int exitCode, String status, String hidden, long timeMillis,
+            long memoryKb, String stdout, String stderr) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        out().println("__RESULT__" + id + "|" + exitCode + "|" + status + "|" + hidden + "|" + timeMillis
+                + "|" + memoryKb + "|" + encoder.encodeToString(stdout.getBytes(StandardCharsets.UTF_8))
+                + "|" + encoder.encodeToString(stderr.getBytes(StandardCharsets.UTF_8)));
+        out().flush();
+    }
+
+    // Shell command substitution drops trailing newlines; keep the same shape for stdout/stderr.
+    private static String trimTrailingNewlines(String text) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    // Same as the harness normalize_text: trailing whitespace removed from every line.
+    static String normalizeOutput(String text) {
+        return trimTrailingNewlines(text.replaceAll("(?dm)[ \\t\\r\\f\\x0B]+$", ""));
+    }
+
+    /**
+     * Runs the program in its own JVM: {@code standby} when a {@link StandbyPool} JVM already took
+     * it, otherwise a JVM started here. Both run under the same CPU limit and are supervised the
+     * same way: by a {@link ProcessSampler} over the JVM's process tree, in the {@code cgroup}
+     * when there is one. Whatever the program left running is killed as soon as the JVM exits,
+     * and cancelling the run through the session's {@link RunControl} kills the tree at once.
+     */
+    private static WarmRunner.Result runInFreshJvm(Path dir, RunTarget runTarget, RunProfile profile,
+            int timeoutSeconds, Process standby, RunCgroup cgroup, JfrProfile recording)
+            throws IOException, InterruptedException {
+        RunControl control = session().control;
+        Process runProc = standby;
+        if (runProc == null) {
+            ProcessBuilder runPb = launchCommand(runTarget, profile,
+                    recording == null ? List.of() : recording.jvmFlags());
+            runPb.directory(dir.toFile());
+            try {
+                runProc = runPb.start();
+            } catch (IOException e) {
+                if (cgroup != null) {
+                    cgroup.release();
+                }
+                throw e;
+            }
+            if (cgroup != null && !cgroup.add(runProc)) {
+                cgroup.release();
+                cgroup = null;
+            }
+        }
+        long cpuLimitMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(CPU_LIMIT));
+        ProcessSampler sampler = ProcessSampler.start(runProc, cgroup, cpuLimitMillis);
+        OutputPump pump = new OutputPump();
+        pump.startRun(sampler::killTree);
+        pump.pump(runProc.getInputStream(), out(), "run-stdout", false);
+        pump.pump(runProc.getErrorStream(), err(), "run-stderr", false);
+        control.attach(runProc.getOutputStream(), sampler::killTree);
+
+        try {
+            boolean finished = runProc.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            if (!finished && recording != null) {
+                // SIGTERM first, so the recorder writes out what it has; the kill below follows regardless.
+                runProc.destroy();
+                runProc.waitFor(JfrProfile.DUMP_GRACE_SECONDS, TimeUnit.SECONDS);
+            }
+            // Also stops what the program started, which would otherwise hold its output open and keep using CPU.
+            int leftovers = sampler.killTree();
+            sampler.stop();
+            if (finished && leftovers > 0) {
+                serverLog("Stopped " + leftovers + " processes the program left running");
+            }
+            // Whatever the program wrote before exiting still has to reach the user.
+            pump.awaitEnd(TimeUnit.SECONDS.toMillis(2));
+            if (!finished) {
+                err().println("\n" + YELLOW + "⏱️ Code execution timed out!" + RESET);
+            }
+            int exitCode = runProc.waitFor();
+            // prlimit delivers SIGKILL at the limit, which the sampler may not have seen reached yet:
+            // its last sample can trail the kill by a few hundred milliseconds on a busy machine.
+            boolean cpuLimitExceeded = finished && (sampler.cpuLimitExceeded() || exitCode == 128 + SIGXCPU
+                    || exitCode == 128 + SIGKILL && sampler.cpuMillis() >= cpuLimitMillis - 1000);
+            return new WarmRunner.Result(exitCode, !finished, cpuLimitExceeded, sampler.cpuMillis(), sampler.peakRssKb());
+        } finally {
+            control.detach();
+            sampler.release();
+        }
+    }
+
+    private static CompileResult compileWithJavac(Path dir, List<String> javaFiles, int timeoutSeconds)
+            throws IOException, InterruptedException {
+        List<String> compileCmd = new ArrayList<>();
+        compileCmd.add("javac");
+        compileCmd.addAll(CdsArchives.javacFlags(CdsArchives.JAVAC));
+        compileCmd.add("-g:none");
+        // Classes of files that are not recompiled come from the class path, never their sources.
+        compileCmd.add("-cp");
+        compileCmd.add(".");
+        compileCmd.add("-sourcepath");
+        compileCmd.add("");
+        compileCmd.add("-d");
+        compileCmd.add(".");
+        compileCmd.addAll(javaFiles);
+
+        // Compile recursively so package-based paths are supported.
+        ProcessBuilder compilePb = new ProcessBuilder(compileCmd);
+        compilePb.directory(dir.toFile());
+        compilePb.redirectErrorStream(true);
+        Process compileProc = compilePb.start();
+        ProcessSampler sampler = ProcessSampler.start(compileProc);
+
+        String compileOutput = readStream(compileProc.getInputStream());
+        boolean compiled = compileProc.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+        sampler.stop();
+        if (!compiled) {
+            compileProc.destroyForcibly();
+        }
+        return new CompileResult(compiled && compileProc.exitValue() == 0, compileOutput, "javac", sampler.cpuMillis());
+    }
+
+    /**
+     * Accepts the one connection a child JVM makes to {@code server} and deletes the socket file
+     * afterwards. The future fails if the child exits without connecting.
+     */
+    static CompletableFuture<SocketChannel> acceptChild(ServerSocketChannel server, Path socketPath,
+            Process child) {
+        CompletableFuture<SocketChannel> connection = CompletableFuture.supplyAsync(() -> {
+            try (ServerSocketChannel listening = server) {
+                return listening.accept();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                try {
+                    Files.deleteIfExists(socketPath);
+                } catch (IOException ignored) {
+                    // The socket file is only needed until the child has connected.
+                }
+            }
+        });
+        // Unblock accept() if the child dies before connecting.
+        child.onExit().thenRun(() -> {
+            if (!connection.isDone()) {
+                try {
+                    server.close();
+                } catch (IOException ignored) {
+                    // Already closed.
+                }
+            }
+        });
+        return connection;
+    }
+
+    private static String readStream(InputStream is) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = br.readLine()) != null) {
+            sb.append(line).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes what the previous program left in the session directory. Sources and class files
+     * stay for {@link IncrementalBuild}, which deletes the ones the new batch no longer has; the
+     * rest is renamed aside and deleted by {@link Workspace} in the background.
+     */
+    private static void clearRunArtifacts(Path dir) {
+        List<Path> leftovers = new ArrayList<>();
+        try {
+            collectRunArtifacts(dir, dir, session().build, leftovers);
+        } catch (IOException | UncheckedIOException ignored) {
+            // Non-fatal: stale files may remain if cleanup fails.
+        }
+        if (!leftovers.isEmpty()) {
+            Workspace.discard(leftovers);
+        }
+    }
+
+    /**
+     * Adds the run artifacts under {@code dir} to {@code leftovers}; true when it holds sources or
+     * classes. A class file the compiler did not write, or one whose bytes changed, is an artifact.
+     */
+    private static boolean collectRunArtifacts(Path root, Path dir, IncrementalBuild build, List<Path> leftovers)
+            throws IOException {
+        boolean keep = false;
+        List<Path> children;
+        try (Stream<Path> stream = Files.list(dir)) {
+            children = stream.collect(Collectors.toList());
+        }
+        for (Path path : children) {
+            String name = path.getFileName().toString();
+            if (Files.isSymbolicLink(path)) {
+                leftovers.add(path);
+            } else if (Files.isDirectory(path)) {
+                List<Path> nested = new ArrayList<>();
+                if (collectRunArtifacts(root, path, build, nested)) {
+                    keep = true;
+                    leftovers.addAll(nested);
+                } else {
+                    // A directory of program output goes aside whole, in one rename.
+                    leftovers.add(path);
+                }
+            } else if (name.endsWith(".java") || name.endsWith(".class") && build.isCompiled(root, path)) {
+                keep = true;
+            } else {
+                leftovers.add(path);
+            }
+        }
+        return keep;
+    }
+}
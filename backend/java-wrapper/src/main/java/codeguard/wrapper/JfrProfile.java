@@ -0,0 +1,266 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.CYAN;
+import static codeguard.wrapper.InteractiveWrapper.RESET;
+import static codeguard.wrapper.InteractiveWrapper.YELLOW;
+import static codeguard.wrapper.InteractiveWrapper.out;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profiled runs ({@code __PROFILE__}): the program runs in a fresh JVM under Java Flight Recorder
+ * with {@code profile.jfc}, which only samples CPU and allocations and records GC pauses. After
+ * the program has exited the recording is summarized for the user and deleted together with the
+ * recorder's repository, both kept in the session directory. Only samples taken while the user's
+ * code was on the stack are attributed, so JVM startup and the launcher do not show up; the
+ * allocation samples' weights add up to an estimate of everything allocated. Limits and timeouts
+ * are those of a normal run; a program that runs into its timeout is sent SIGTERM and given
+ * {@link #DUMP_GRACE_SECONDS} to write the recording.
+ */
+final class JfrProfile {
+    static final int DUMP_GRACE_SECONDS = 2;
+    private static final String SETTINGS_RESOURCE = "/codeguard/wrapper/profile.jfc";
+    private static final String SETTINGS_FILE = "profile.jfc";
+    private static final int TOP_METHODS = 8;
+    private static final int TOP_ALLOCATIONS = 5;
+    private static final Map<String, String> PRIMITIVE_DESCRIPTORS = Map.of("Z", "boolean", "B", "byte",
+            "C", "char", "S", "short", "I", "int", "J", "long", "F", "float", "D", "double");
+    private static volatile Path settings;
+
+    private final Path dir;
+    private final Path recording;
+
+    private JfrProfile(Path dir) {
+        this.dir = dir;
+        this.recording = dir.resolve("recording.jfr");
+    }
+
+    static JfrProfile create(Path workspace, Path sessionDir) throws IOException {
+        extractSettings(workspace);
+        return new JfrProfile(Files.createDirectories(sessionDir.resolve(".profile")));
+    }
+
+    List<String> jvmFlags() {
+        return List.of("-XX:StartFlightRecording=settings=" + settings + ",filename=" + recording
+                        + ",dumponexit=true",
+                "-XX:FlightRecorderOptions=repository=" + dir.resolve("repository"),
+                // The recorder announces itself on stdout otherwise.
+                "-Xlog:jfr+startup=off");
+    }
+
+    /** Prints the summary of the recording, or why there is none. */
+    void report() {
+        PrintStream out = out();
+        out.println("\n" + CYAN + "--- Profile ---" + RESET);
+        try {
+            if (!Files.isRegularFile(recording) || Files.size(recording) == 0) {
+                out.println(YELLOW + "No profile: the program was stopped before the recording was written." + RESET);
+                return;
+            }
+            summarize(recording, out);
+        } catch (IOException | RuntimeException e) {
+            out.println(YELLOW + "No profile: the recording could not be read (" + e.getMessage() + ")." + RESET);
+        } finally {
+            out.flush();
+        }
+    }
+
+    /** Deletes the recording and the recorder's repository in the background. */
+    void discard() {
+        Workspace.discard(List.of(dir));
+    }
+
+    private static void summarize(Path recording, PrintStream out) throws IOException {
+        List<jdk.jfr.consumer.RecordedEvent> events = jdk.jfr.consumer.RecordingFile.readAllEvents(recording);
+        events.sort(Comparator.comparing(jdk.jfr.consumer.RecordedEvent::getStartTime));
+        // A thread's first allocation sample also weighs what it allocated before the recording started.
+        Map<Long, Long> unrecorded = new HashMap<>();
+        for (jdk.jfr.consumer.RecordedEvent event : events) {
+            if ("jdk.ThreadAllocationStatistics".equals(event.getEventType().getName())
+                    && event.getThread("thread") != null) {
+                unrecorded.putIfAbsent(event.getThread("thread").getJavaThreadId(), event.getLong("allocated"));
+            }
+        }
+
+        Map<String, Long> cpu = new HashMap<>();
+        long cpuSamples = 0;
+        Map<String, Long> allocations = new HashMap<>();
+        long sampledBytes = 0;
+        long allocated = 0;
+        int gcCount = 0;
+        Duration gcPauses = Duration.ZERO;
+        Duration longestPause = Duration.ZERO;
+        for (jdk.jfr.consumer.RecordedEvent event : events) {
+            switch (event.getEventType().getName()) {
+                case "jdk.ExecutionSample": {
+                    String method = hotMethod(event.getStackTrace());
+                    if (method != null) {
+                        cpu.merge(method, 1L, Long::sum);
+                        cpuSamples++;
+                    }
+                    break;
+                }
+                case "jdk.ObjectAllocationSample": {
+                    // Each sample weighs what its thread allocated since the one before.
+                    long weight = event.getLong("weight");
+                    jdk.jfr.consumer.RecordedThread thread = event.getThread("eventThread");
+                    if (thread != null) {
+                        long before = unrecorded.getOrDefault(thread.getJavaThreadId(), 0L);
+                        unrecorded.put(thread.getJavaThreadId(), Math.max(0, before - weight));
+                        weight = Math.max(0, weight - before);
+                    }
+                    allocated += weight;
+                    String site = userMethod(event.getStackTrace());
+                    if (site != null && weight > 0) {
+                        allocations.merge(site + "  " + typeName(event.getClass("objectClass")), weight, Long::sum);
+                        sampledBytes += weight;
+                    }
+                    break;
+                }
+                case "jdk.GarbageCollection": {
+                    gcCount++;
+                    gcPauses = gcPauses.plus(event.getDuration("sumOfPauses"));
+                    Duration longest = event.getDuration("longestPause");
+                    if (longest.compareTo(longestPause) > 0) {
+                        longestPause = longest;
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        if (cpuSamples == 0) {
+            out.println("CPU: no samples in your code; it ran too briefly to be sampled");
+        } else {
+            out.println("CPU: " + cpuSamples + " samples, by the method that was running");
+            printTop(out, cpu, cpuSamples, TOP_METHODS, false);
+        }
+        if (sampledBytes > 0) {
+            out.println("Allocation hot spots (sampled):");
+            printTop(out, allocations, sampledBytes, TOP_ALLOCATIONS, true);
+        }
+        out.println("Allocated in total: ~" + formatBytes(allocated));
+        out.println("GC: " + (gcCount == 0 ? "no collections"
+                : gcCount + (gcCount == 1 ? " collection" : " collections") + ", paused "
+                        + formatMillis(gcPauses) + " in total, longest " + formatMillis(longestPause)));
+    }
+
+    private static void printTop(PrintStream out, Map<String, Long> counts, long total, int limit, boolean bytes) {
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(entry -> out.println(String.format("  %5.1f%%  %s%s", 100.0 * entry.getValue() / total,
+                        entry.getKey(), bytes ? "  (~" + formatBytes(entry.getValue()) + ")" : "")));
+    }
+
+    // The running method, with the user's method it was called from when it is library code.
+    private static String hotMethod(jdk.jfr.consumer.RecordedStackTrace stack) {
+        String caller = userMethod(stack);
+        if (caller == null) {
+            return null;
+        }
+        jdk.jfr.consumer.RecordedFrame top = stack.getFrames().get(0);
+        return isUserFrame(top) ? caller : methodName(top) + " <- " + caller;
+    }
+
+    private static String userMethod(jdk.jfr.consumer.RecordedStackTrace stack) {
+        if (stack == null) {
+            return null;
+        }
+        for (jdk.jfr.consumer.RecordedFrame frame : stack.getFrames()) {
+            if (isUserFrame(frame)) {
+                return methodName(frame);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * User classes come from the application class loader, as the launcher does apart from
+     * itself. Lambdas are generated classes; their frames go to the method that declared them.
+     */
+    private static boolean isUserFrame(jdk.jfr.consumer.RecordedFrame frame) {
+        jdk.jfr.consumer.RecordedMethod method = frame.getMethod();
+        if (method == null || !frame.isJavaFrame()) {
+            return false;
+        }
+        String typeName = method.getType().getName();
+        jdk.jfr.consumer.RecordedClassLoader loader = method.getType().getClassLoader();
+        return loader != null && "app".equals(loader.getName())
+                && !typeName.startsWith(Launcher.class.getPackageName() + ".") && !typeName.contains("$$Lambda");
+    }
+
+    private static String methodName(jdk.jfr.consumer.RecordedFrame frame) {
+        jdk.jfr.consumer.RecordedMethod method = frame.getMethod();
+        return method == null ? "?" : method.getType().getName() + "." + method.getName();
+    }
+
+    // Array classes are recorded by descriptor, such as [I; shown as int[].
+    private static String typeName(jdk.jfr.consumer.RecordedClass type) {
+        if (type == null) {
+            return "?";
+        }
+        String name = type.getName();
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions == 0) {
+            return name;
+        }
+        String element = name.substring(dimensions);
+        if (PRIMITIVE_DESCRIPTORS.containsKey(element)) {
+            element = PRIMITIVE_DESCRIPTORS.get(element);
+        } else if (element.startsWith("L") && element.endsWith(";")) {
+            element = element.substring(1, element.length() - 1);
+        }
+        return element + "[]".repeat(dimensions);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+
+    private static String formatMillis(Duration duration) {
+        return String.format("%.1f ms", duration.toNanos() / 1_000_000.0);
+    }
+
+    // Written once per wrapper process, so a new image never runs with an old file.
+    private static synchronized void extractSettings(Path workspace) throws IOException {
+        if (settings != null) {
+            return;
+        }
+        Path target = workspace.resolve(SETTINGS_FILE);
+        try (InputStream in = JfrProfile.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException(SETTINGS_RESOURCE + " is missing from the wrapper jar");
+            }
+            Path temp = Files.createTempFile(workspace, ".tmp-", ".jfc");
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        settings = target;
+    }
+}
@@ -0,0 +1,137 @@
+package codeguard.wrapper;
+
+import java.io.FilterInputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Starts a user program in its own JVM:
+ * {@code java -cp <wrapper jar>:<classes> codeguard.wrapper.Launcher main|applet <class> [args...]}.
+ * It ships precompiled in the wrapper jar, so a run no longer generates, compiles and loads a
+ * launcher next to the user's classes, and every runner (cold, standby, warm and the container
+ * runners in the backend) starts programs through the same code.
+ */
+public final class Launcher {
+    // Per class, so a runner that starts the same program again skips the reflective lookup.
+    private static final ClassValue<MethodHandle> MAIN_METHODS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                Method main = type.getMethod("main", String[].class);
+                if (!Modifier.isStatic(main.getModifiers())) {
+                    throw new NoSuchMethodException(type.getName() + ".main(String[]) is not static");
+                }
+                // Public main methods of package-private classes are allowed, as with the java launcher.
+                main.setAccessible(true);
+                return MethodHandles.lookup().unreflect(main);
+            } catch (ReflectiveOperationException e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+    };
+
+    private Launcher() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !("main".equals(args[0]) || "applet".equals(args[0]))) {
+            System.err.println("usage: " + Launcher.class.getName() + " main|applet <class> [args...]");
+            System.exit(2);
+        }
+        System.setIn(new FilterInputStream(System.in) {
+            @Override
+            public void close() {
+                // Keep stdin open when user code calls Scanner.close().
+            }
+        });
+        Throwable failure = run(ClassLoader.getSystemClassLoader(), "applet".equals(args[0]), args[1],
+                Arrays.copyOfRange(args, 2, args.length), error -> false);
+        if (failure != null) {
+            System.exit(1);
+        }
+        // Otherwise the JVM exits once the program's non-daemon threads have finished.
+    }
+
+    /**
+     * Runs a main class or a headless applet from {@code loader} on the current thread. A failure
+     * is printed the way the java launcher prints it, without the launcher's own frames, and
+     * returned; headless fallbacks and failures {@code expected} accepts (such as a trapped
+     * {@code System.exit}) count as a normal return. Standard output and error are flushed either way.
+     */
+    public static Throwable run(ClassLoader loader, boolean applet, String entryClass, String[] args,
+            Predicate<Throwable> expected) {
+        try {
+            if (applet) {
+                startApplet(loader, entryClass);
+            } else {
+                Class<?> entry = Class.forName(entryClass, true, loader);
+                mainMethod(entry).invokeExact(args);
+            }
+            return null;
+        } catch (Throwable t) {
+            Throwable cause = (t instanceof InvocationTargetException && t.getCause() != null) ? t.getCause() : t;
+            if (expected.test(cause)) {
+                return null;
+            }
+            if (cause instanceof java.awt.HeadlessException) {
+                System.out.println(applet
+                        ? "Applet compiled successfully (headless runtime skipped)."
+                        : "GUI execution skipped in headless environment.");
+                return null;
+            }
+            // Applets report the reflective wrapper too, as the generated launcher used to.
+            Throwable reported = applet ? t : cause;
+            trimLauncherFrames(reported);
+            System.out.flush();
+            reported.printStackTrace();
+            return cause;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+        }
+    }
+
+    @SuppressWarnings("removal")
+    private static void startApplet(ClassLoader loader, String entryClass) throws ReflectiveOperationException {
+        System.setProperty("java.awt.headless", "true");
+        Object instance = Class.forName(entryClass, true, loader).getDeclaredConstructor().newInstance();
+        if (instance instanceof java.applet.Applet) {
+            java.applet.Applet applet = (java.applet.Applet) instance;
+            applet.init();
+            applet.start();
+            java.awt.image.BufferedImage canvas =
+                    new java.awt.image.BufferedImage(1, 1, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+            java.awt.Graphics2D g = canvas.createGraphics();
+            applet.paint(g);
+            g.dispose();
+        }
+        System.out.println("Applet executed in headless mode.");
+    }
+
+    private static MethodHandle mainMethod(Class<?> entry) throws ReflectiveOperationException {
+        try {
+            return MAIN_METHODS.get(entry);
+        } catch (UndeclaredThrowableException e) {
+            throw (ReflectiveOperationException) e.getCause();
+        }
+    }
+
+    // Drops the reflection and launcher frames below the user's entry point.
+    private static void trimLauncherFrames(Throwable error) {
+        StackTraceElement[] frames = error.getStackTrace();
+        for (int i = 0; i < frames.length; i++) {
+            String className = frames[i].getClassName();
+            if (className.startsWith("jdk.internal.reflect.") || className.equals(Method.class.getName())
+                    || className.startsWith(Launcher.class.getName())) {
+                error.setStackTrace(Arrays.copyOf(frames, i));
+                return;
+            }
+        }
+    }
+}
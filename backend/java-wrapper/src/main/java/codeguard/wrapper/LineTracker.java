@@ -0,0 +1,32 @@
+package codeguard.wrapper;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Remembers whether the last byte written ended a line, so trailers never continue program output. */
+final class LineTracker extends FilterOutputStream {
+    private volatile boolean atLineStart = true;
+
+    LineTracker(OutputStream out) {
+        super(out);
+    }
+
+    boolean atLineStart() {
+        return atLineStart;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        atLineStart = b == '\n';
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (len > 0) {
+            atLineStart = b[off + len - 1] == '\n';
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.RESET;
+import static codeguard.wrapper.InteractiveWrapper.YELLOW;
+import static codeguard.wrapper.InteractiveWrapper.err;
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Copies a child's stdout and stderr to the wrapper's own streams, one dedicated thread per
+ * stream. Bytes that are already waiting in the pipe are coalesced into one write of up to
+ * {@code CHUNK_BYTES}, bounded by {@code JAVA_OUTPUT_COALESCE_MS}; anything else, such as a
+ * prompt waiting for input, is written immediately. Each run gets a byte budget of
+ * {@code JAVA_MAX_OUTPUT_KB}; the first stream to exhaust it prints a truncation marker and
+ * triggers the run's limit action, which kills the program.
+ */
+final class OutputPump {
+    private static final int CHUNK_BYTES = 8192;
+    private static final long MAX_RUN_BYTES = intFromEnv("JAVA_MAX_OUTPUT_KB", 1024) * 1024L;
+    private static final long COALESCE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(intFromEnv("JAVA_OUTPUT_COALESCE_MS", 20));
+
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+    private final AtomicLong remaining = new AtomicLong(MAX_RUN_BYTES);
+    private final AtomicBoolean limitReached = new AtomicBoolean();
+    private volatile Runnable onLimit = () -> { };
+
+    /** Resets the budget for a new run; {@code limitAction} runs once if it is exceeded. */
+    void startRun(Runnable limitAction) {
+        onLimit = limitAction;
+        limitReached.set(false);
+        remaining.set(MAX_RUN_BYTES);
+    }
+
+    // What System.setSecurityManager prints on JDK 17+, line by line.
+    private static final List<Pattern> BANNER = List.of(
+            Pattern.compile(Pattern.quote("WARNING: A terminally deprecated method in java.lang.System has been called")),
+            Pattern.compile("WARNING: System::setSecurityManager has been called by \\S+ \\(.*\\)"),
+            Pattern.compile("WARNING: Please consider reporting this to the maintainers of \\S+"),
+            Pattern.compile(Pattern.quote("WARNING: System::setSecurityManager will be removed in a future release")));
+
+    /**
+     * Starts copying {@code in} to {@code out}. With {@code skipSecurityBanner}, leading lines of
+     * the JDK 17+ security manager deprecation banner are dropped, matched line for line: the warm
+     * runner opts into the security manager for its exit trap, and the banner means nothing to the user.
+     */
+    void pump(InputStream in, PrintStream out, String name, boolean skipSecurityBanner) {
+        Source source = new Source(in);
+        sources.add(source);
+        Thread thread = new Thread(() -> {
+            try {
+                if (skipSecurityBanner) {
+                    skipBanner(source, out);
+                }
+                copy(source, out);
+            } catch (IOException ignored) {
+                // The child is gone.
+            } finally {
+                source.finished = true;
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Waits until every stream reached end of file, e.g. after the child exited. */
+    void awaitEnd(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (System.nanoTime() < deadline && sources.stream().anyMatch(source -> !source.finished)) {
+            Thread.sleep(2);
+        }
+    }
+
+    /**
+     * Waits until each stream, in the order they were added, has copied at least the given
+     * number of bytes; used for children that stay alive between runs.
+     */
+    void awaitCopied(long timeoutMillis, long... expectedBytes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int i = 0; i < expectedBytes.length && i < sources.size(); i++) {
+            Source source = sources.get(i);
+            while (source.copied < expectedBytes[i] && !source.finished && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private void copy(Source source, PrintStream out) throws IOException {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        int length;
+        while ((length = source.in.read(chunk)) != -1) {
+            long deadline = System.nanoTime() + COALESCE_NANOS;
+            int available;
+            while (length < chunk.length && (available = source.in.available()) > 0
+                    && System.nanoTime() < deadline) {
+                int read = source.in.read(chunk, length, Math.min(available, chunk.length - length));
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            emit(chunk, length, out);
+            source.copied += length;
+        }
+    }
+
+    private void emit(byte[] chunk, int length, PrintStream out) {
+        long before = remaining.getAndAdd(-length);
+        if (before >= length) {
+            out.write(chunk, 0, length);
+            out.flush();
+            return;
+        }
+        if (before > 0) {
+            out.write(chunk, 0, (int) before);
+            out.flush();
+        }
+        // Output past the budget is drained and dropped until the program is gone.
+        if (limitReached.compareAndSet(false, true)) {
+            err().println("\n" + YELLOW + "⚠️ Output limit of " + (MAX_RUN_BYTES / 1024)
+                    + " KB exceeded; output truncated and program stopped." + RESET);
+            err().flush();
+            onLimit.run();
+        }
+    }
+
+    private static void skipBanner(Source source, PrintStream out) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int skipped = 0;
+        int b;
+        while ((b = source.in.read()) != -1) {
+            line.write(b);
+            if (b != '\n') {
+                continue;
+            }
+            byte[] bytes = line.toByteArray();
+            String text = new String(bytes, StandardCharsets.UTF_8).stripTrailing();
+            line.reset();
+            if (!BANNER.get(skipped).matcher(text).matches()) {
+                out.write(bytes, 0, bytes.length);
+                out.flush();
+                source.copied += bytes.length;
+                return;
+            }
+            if (++skipped == BANNER.size()) {
+                return;
+            }
+        }
+    }
+
+    private static final class Source {
+        final InputStream in;
+        // Only written by the pump thread; banner lines that are skipped do not count.
+        volatile long copied;
+        volatile boolean finished;
+
+        Source(InputStream in) {
+            this.in = in;
+        }
+    }
+}
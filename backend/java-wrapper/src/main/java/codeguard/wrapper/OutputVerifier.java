@@ -0,0 +1,176 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.normalizeOutput;
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A test case's stdout, checked against the expected output as the program writes it. Lines
+ * compare like the harness normalize_text does: trailing whitespace on each line and trailing
+ * blank lines are ignored. The first byte that rules a match out, or whitespace running
+ * {@link #MARGIN_BYTES} past where the expected output ends, is a definitive mismatch, and the
+ * caller stops the program on it. Output is kept up to a window after the first wrong line, so a
+ * wrong answer printing megabytes is neither buffered nor sent back in full. Without an expected
+ * output it only captures.
+ */
+final class OutputVerifier extends OutputStream {
+    private static final int MARGIN_BYTES = 4096;
+    private static final int WINDOW_BYTES = 1024;
+
+    // Normalized expected output by line; null when only capturing.
+    private final byte[][] expected;
+    private byte[] kept = new byte[256];
+    private int size;
+    private long dropped;
+    // Position in the expected output: line index, and bytes written on that line so far.
+    private int line;
+    private int column;
+    private long lineStart;
+    private long written;
+    // Where the expected output ended in what was written.
+    private long expectedEnd;
+    private volatile boolean mismatched;
+    private long mismatchAt = -1;
+    private int mismatchLine;
+
+    OutputVerifier(String expected) {
+        if (expected == null) {
+            this.expected = null;
+            return;
+        }
+        String normalized = normalizeOutput(expected);
+        String[] lines = normalized.isEmpty() ? new String[0] : normalized.split("\n", -1);
+        this.expected = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            this.expected[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    static boolean isEnabled() {
+        return !"off".equalsIgnoreCase(stringFromEnv("JAVA_STREAM_VERIFY", "on"));
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if (expected == null) {
+            keep(b, off, len);
+            return;
+        }
+        for (int i = off; i < off + len; i++) {
+            if (mismatched) {
+                // Past the first wrong line only a window is kept.
+                int room = (int) Math.max(0, Math.min(off + len - i, mismatchAt + WINDOW_BYTES - written));
+                keep(b, i, room);
+                written += off + len - i;
+                dropped += off + len - i - room;
+                return;
+            }
+            keep(b, i, 1);
+            written++;
+            check(b[i]);
+        }
+    }
+
+    /** Settles the verdict once the program has ended: expected lines it never wrote are a mismatch. */
+    synchronized void finish() {
+        if (expected == null || mismatched) {
+            return;
+        }
+        // An unterminated last line counts once all of it was written.
+        int complete = line < expected.length && column >= expected[line].length ? line + 1 : line;
+        if (complete < expected.length) {
+            mismatch();
+        }
+    }
+
+    boolean mismatched() {
+        return mismatched;
+    }
+
+    /** Whether the output matched; null when there was nothing to compare with. */
+    synchronized Boolean matches() {
+        return expected == null ? null : !mismatched;
+    }
+
+    /** Everything written, or for a mismatch the lines around it with what was left out noted. */
+    synchronized byte[] output() {
+        int from = mismatched ? (int) Math.max(0, mismatchAt - WINDOW_BYTES) : 0;
+        if (from > 0) {
+            // Start on a line boundary.
+            while (from < mismatchAt && kept[from - 1] != '\n') {
+                from++;
+            }
+        }
+        // The line that went wrong can be long too.
+        int to = mismatched ? (int) Math.min(size, mismatchAt + WINDOW_BYTES) : size;
+        long omitted = dropped + size - to;
+        if (from == 0 && omitted == 0) {
+            return Arrays.copyOf(kept, size);
+        }
+        ByteArrayOutputStream window = new ByteArrayOutputStream();
+        if (from > 0) {
+            window.writeBytes(("[... " + from + " bytes omitted ...]\n").getBytes(StandardCharsets.UTF_8));
+        }
+        window.write(kept, from, to - from);
+        window.writeBytes(("\n[... first difference from the expected output on line " + mismatchLine
+                + (omitted > 0 ? ", " + omitted + " more bytes omitted" : "") + " ...]")
+                .getBytes(StandardCharsets.UTF_8));
+        return window.toByteArray();
+    }
+
+    private void check(byte b) {
+        boolean whitespace = b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+        if (line < expected.length) {
+            byte[] want = expected[line];
+            if (b == '\n') {
+                if (column < want.length) {
+                    mismatch();
+                    return;
+                }
+                line++;
+                column = 0;
+                lineStart = written;
+                expectedEnd = written;
+            } else if (column < want.length ? b != want[column] : !whitespace) {
+                mismatch();
+            } else if (++column - want.length > MARGIN_BYTES) {
+                mismatch();
+            }
+            return;
+        }
+        // Past the expected output only blank lines may follow, up to a margin.
+        if (b == '\n') {
+            line++;
+            lineStart = written;
+        } else if (!whitespace) {
+            mismatch();
+            return;
+        }
+        if (written - expectedEnd > MARGIN_BYTES) {
+            mismatch();
+        }
+    }
+
+    private void mismatch() {
+        mismatched = true;
+        mismatchAt = lineStart;
+        mismatchLine = line + 1;
+    }
+
+    private void keep(byte[] b, int off, int len) {
+        if (size + len > kept.length) {
+            kept = Arrays.copyOf(kept, Math.max(kept.length * 2, size + len));
+        }
+        System.arraycopy(b, off, kept, size, len);
+        size += len;
+    }
+}
@@ -0,0 +1,164 @@
+package codeguard.wrapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Polls a child process tree's CPU time and peak RSS while it runs, enforces a CPU limit on
+ * the tree as a whole and optionally an RSS limit on the child, and kills it on request. The tree is the child and what
+ * {@link ProcessHandle#descendants()} showed below it in any sample: the kernel forgets a
+ * process's CPU time once it is reaped, and a process whose parent exits leaves the tree, so
+ * the figures are each member's last sample, at most one interval old. A {@link RunCgroup}
+ * closes both gaps: its CPU time is exact and killing it reaches every process in it.
+ */
+final class ProcessSampler {
+    private static final long INTERVAL_MILLIS = 20;
+    // Listing descendants reads every process's stat file, so the tree is walked less often.
+    private static final int TREE_EVERY_SAMPLES = 10;
+    private final Process process;
+    private final RunCgroup cgroup;
+    private final long cpuLimitMillis;
+    private final long memoryLimitKb;
+    // The most CPU time each member was seen with; a handle includes its start time, so pids can be reused.
+    private final Map<ProcessHandle, Long> members = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile long cpuMillis;
+    private volatile long peakRssKb;
+    private volatile boolean cpuLimitExceeded;
+    private volatile boolean memoryLimitExceeded;
+    private int samples;
+
+    private ProcessSampler(Process process, RunCgroup cgroup, long cpuLimitMillis, long memoryLimitKb) {
+        this.process = process;
+        this.cgroup = cgroup;
+        this.cpuLimitMillis = cpuLimitMillis;
+        this.memoryLimitKb = memoryLimitKb;
+        this.thread = new Thread(this::loop, "process-sampler-" + process.pid());
+        this.thread.setDaemon(true);
+    }
+
+    static ProcessSampler start(Process process) {
+        return start(process, null, 0);
+    }
+
+    /** Samples {@code process}, in {@code cgroup} if not null, and kills its tree once it used {@code cpuLimitMillis}. */
+    static ProcessSampler start(Process process, RunCgroup cgroup, long cpuLimitMillis) {
+        return start(process, cgroup, cpuLimitMillis, 0);
+    }
+
+    /** As above, and kills the tree once the child's RSS reached {@code memoryLimitKb} when that is positive. */
+    static ProcessSampler start(Process process, RunCgroup cgroup, long cpuLimitMillis, long memoryLimitKb) {
+        ProcessSampler sampler = new ProcessSampler(process, cgroup, cpuLimitMillis, memoryLimitKb);
+        sampler.thread.start();
+        return sampler;
+    }
+
+    void stop() throws InterruptedException {
+        thread.interrupt();
+        thread.join();
+        if (cgroup != null) {
+            // Final now that nothing in the group runs any more.
+            cpuMillis = Math.max(cpuMillis, cgroup.cpuMillis());
+        }
+    }
+
+    /** Kills the child and every process it started; returns how many were still running besides the child. */
+    int killTree() {
+        Set<ProcessHandle> tree = new HashSet<>(members.keySet());
+        process.descendants().forEach(tree::add);
+        if (cgroup != null) {
+            tree.addAll(cgroup.processes());
+        }
+        tree.remove(process.toHandle());
+        tree.removeIf(member -> !member.isAlive());
+        if (cgroup != null) {
+            cgroup.kill();
+        }
+        process.destroyForcibly();
+        tree.forEach(ProcessHandle::destroyForcibly);
+        return tree.size();
+    }
+
+    /** Removes the child's cgroup, once {@link #killTree()} left nothing running in it. */
+    void release() {
+        if (cgroup != null) {
+            cgroup.release();
+        }
+    }
+
+    long cpuMillis() {
+        return cpuMillis;
+    }
+
+    long peakRssKb() {
+        return peakRssKb;
+    }
+
+    boolean cpuLimitExceeded() {
+        return cpuLimitExceeded;
+    }
+
+    boolean memoryLimitExceeded() {
+        return memoryLimitExceeded;
+    }
+
+    private void loop() {
+        try {
+            while (process.isAlive()) {
+                sample();
+                if (cpuLimitMillis > 0 && cpuMillis >= cpuLimitMillis) {
+                    cpuLimitExceeded = true;
+                    killTree();
+                    return;
+                }
+                if (memoryLimitKb > 0 && peakRssKb >= memoryLimitKb) {
+                    memoryLimitExceeded = true;
+                    killTree();
+                    return;
+                }
+                Thread.sleep(INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException ignored) {
+            // Stopped by the caller.
+        }
+    }
+
+    private void sample() {
+        peakRssKb = Math.max(peakRssKb, readPeakRssKb(process.pid()));
+        long groupMillis = cgroup == null ? -1 : cgroup.cpuMillis();
+        if (groupMillis >= 0) {
+            cpuMillis = groupMillis;
+            return;
+        }
+        record(process.toHandle());
+        if (samples++ % TREE_EVERY_SAMPLES == 0) {
+            process.descendants().forEach(this::record);
+        }
+        cpuMillis = members.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private void record(ProcessHandle member) {
+        long millis = member.info().totalCpuDuration().map(Duration::toMillis).orElse(0L);
+        members.merge(member, millis, Math::max);
+    }
+
+    /** VmHWM from /proc, or 0 when the process is gone or /proc is unavailable. */
+    static long readPeakRssKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Fall through.
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,247 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A cgroup v2 group per run, created under {@code JAVA_RUN_CGROUP}: by default ({@code auto})
+ * a {@code codeguard-runs} group below the wrapper's own, {@code off} to disable. Runs only
+ * get one where the cgroup mount is writable, such as a container started with a delegated
+ * cgroup; elsewhere {@link ProcessSampler} supervises the process tree alone. The group's
+ * cpu.stat gives the run's exact CPU time and cgroup.kill stops everything in it at once, and
+ * where the parent offers the cpu and memory controllers the run is capped at
+ * {@code JAVA_RUN_CPUS} CPUs and {@code JAVA_RUN_MEMORY_MB} of memory. Groups of wrappers that
+ * exited are removed at startup.
+ */
+final class RunCgroup {
+    private static final String RUNS_GROUP = "codeguard-runs";
+    private static final Pattern RUN_NAME = Pattern.compile("run-(\\d+)-\\d+");
+    private static final long PID = ProcessHandle.current().pid();
+    private static final long CPU_PERIOD_MICROS = 100_000;
+    private static final long RELEASE_WAIT_MILLIS = 1000;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    // Null while run groups are unavailable.
+    private static volatile Path parent;
+
+    private final Path dir;
+
+    private RunCgroup(Path dir) {
+        this.dir = dir;
+    }
+
+    static void init() {
+        String configured = stringFromEnv("JAVA_RUN_CGROUP", "auto");
+        if ("off".equalsIgnoreCase(configured)) {
+            return;
+        }
+        boolean auto = "auto".equalsIgnoreCase(configured);
+        try {
+            Path own = auto ? ownGroup() : null;
+            if (auto && own == null) {
+                return;
+            }
+            Path runs = Files.createDirectories(auto ? own.resolve(RUNS_GROUP) : Paths.get(configured));
+            if (!Files.isRegularFile(runs.resolve("cgroup.procs"))) {
+                serverLog(runs + " is not a cgroup v2 group; runs are supervised without cgroups");
+                return;
+            }
+            enableControllers(runs);
+            reapOrphans(runs);
+            parent = runs;
+        } catch (IOException e) {
+            // Usually a read-only cgroup mount, which is expected in an unprivileged container.
+            if (!auto) {
+                serverLog("Run cgroups unavailable: " + e.getMessage());
+            }
+        }
+    }
+
+    /** A group for one run, or null when run groups are unavailable. */
+    static RunCgroup create() {
+        Path runs = parent;
+        if (runs == null) {
+            return null;
+        }
+        RunCgroup group = new RunCgroup(runs.resolve("run-" + PID + "-" + COUNTER.incrementAndGet()));
+        try {
+            Files.createDirectory(group.dir);
+            group.writeIfPresent("cpu.max", intFromEnv("JAVA_RUN_CPUS", 1) * CPU_PERIOD_MICROS + " " + CPU_PERIOD_MICROS);
+            group.writeIfPresent("memory.max", Long.toString(intFromEnv("JAVA_RUN_MEMORY_MB", 256) * 1024L * 1024L));
+            // An out-of-memory kill takes the whole run rather than its largest process.
+            group.writeIfPresent("memory.oom.group", "1");
+            return group;
+        } catch (IOException e) {
+            serverLog("Failed to create run cgroup: " + e.getMessage());
+            group.release();
+            return null;
+        }
+    }
+
+    /** Moves {@code process} into the group; its children started from then on are born there. */
+    boolean add(Process process) {
+        try {
+            Files.write(dir.resolve("cgroup.procs"), Long.toString(process.pid()).getBytes(StandardCharsets.US_ASCII));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** True when the parent offers the memory controller, so memory.max caps the group. */
+    boolean limitsMemory() {
+        return Files.isRegularFile(dir.resolve("memory.max"));
+    }
+
+    /** CPU time used by everything that ran in the group, or -1 when it cannot be read. */
+    long cpuMillis() {
+        try {
+            for (String line : Files.readAllLines(dir.resolve("cpu.stat"))) {
+                if (line.startsWith("usage_usec ")) {
+                    return Long.parseLong(line.substring("usage_usec ".length()).trim()) / 1000;
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Fall through.
+        }
+        return -1;
+    }
+
+    /** The processes in the group, including ones that left the child's tree. */
+    List<ProcessHandle> processes() {
+        List<ProcessHandle> processes = new ArrayList<>();
+        try {
+            for (String pid : Files.readAllLines(dir.resolve("cgroup.procs"))) {
+                ProcessHandle.of(Long.parseLong(pid.trim())).ifPresent(processes::add);
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // The group is gone already.
+        }
+        return processes;
+    }
+
+    void kill() {
+        try {
+            if (Files.exists(dir.resolve("cgroup.kill"))) {
+                Files.write(dir.resolve("cgroup.kill"), "1".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+        } catch (IOException ignored) {
+            // The group is gone already.
+            return;
+        }
+        // Kernels before 5.14: one process at a time. Whatever they fork lands in the group too.
+        processes().forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /** Kills what is left in the group and removes it; killed processes take a moment to leave. */
+    void release() {
+        kill();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RELEASE_WAIT_MILLIS);
+        while (true) {
+            try {
+                Files.deleteIfExists(dir);
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    serverLog("Failed to remove run cgroup " + dir.getFileName() + ": " + e.getMessage());
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeIfPresent(String file, String value) throws IOException {
+        Path path = dir.resolve(file);
+        if (Files.exists(path)) {
+            Files.write(path, value.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    // The wrapper's own cgroup v2 directory, or null without a cgroup2 mount.
+    private static Path ownGroup() throws IOException {
+        String group = null;
+        for (String line : Files.readAllLines(Paths.get("/proc/self/cgroup"))) {
+            if (line.startsWith("0::")) {
+                group = line.substring("0::".length());
+            }
+        }
+        if (group == null) {
+            return null;
+        }
+        for (String line : Files.readAllLines(Paths.get("/proc/self/mountinfo"))) {
+            // "id parent major:minor root mountpoint options ... - fstype source options"
+            int separator = line.indexOf(" - ");
+            if (separator < 0 || !line.startsWith("cgroup2 ", separator + 3)) {
+                continue;
+            }
+            String[] fields = line.substring(0, separator).split(" ");
+            String root = fields[3];
+            String relative = group.startsWith(root) ? group.substring(root.length()) : group;
+            return Paths.get(fields[4], relative.replaceFirst("^/", ""));
+        }
+        return null;
+    }
+
+    // Controllers reach the run groups only if enabled here; the runs group holds no processes, so it may.
+    private static void enableControllers(Path runs) throws IOException {
+        List<String> available = Arrays.asList(
+                new String(Files.readAllBytes(runs.resolve("cgroup.controllers")), StandardCharsets.US_ASCII)
+                        .trim().split("\\s+"));
+        for (String controller : List.of("cpu", "memory")) {
+            if (available.contains(controller)) {
+                try {
+                    Files.write(runs.resolve("cgroup.subtree_control"),
+                            ("+" + controller).getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException e) {
+                    serverLog("Cannot enable the " + controller + " controller for run cgroups: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void reapOrphans(Path runs) {
+        int reaped = 0;
+        try (Stream<Path> stream = Files.list(runs)) {
+            for (Path path : stream.collect(Collectors.toList())) {
+                Matcher matcher = RUN_NAME.matcher(path.getFileName().toString());
+                if (!matcher.matches() || !Files.isDirectory(path)) {
+                    continue;
+                }
+                long pid = Long.parseLong(matcher.group(1));
+                if (pid == PID || ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    continue;
+                }
+                new RunCgroup(path).release();
+                reaped++;
+            }
+        } catch (IOException | UncheckedIOException | NumberFormatException e) {
+            serverLog("run cgroup reap failed: " + e.getMessage());
+        }
+        if (reaped > 0) {
+            serverLog("reaped " + reaped + " run cgroups of exited wrappers");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package codeguard.wrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Connects the thread reading a session's input to the program the session is running, so a
+ * run can be steered while the session thread waits for it: input goes to the program's stdin
+ * and a cancel request stops the program within milliseconds, leaving the wrapper and its warm
+ * state alone. Runs are counted in the order the reader saw them requested; input and cancel
+ * requests for a run whose program has not started yet, for instance because it is still
+ * compiling, are held until it starts.
+ */
+final class RunControl {
+    // Type-ahead beyond this before the program starts is dropped.
+    private static final int MAX_EARLY_INPUT_BYTES = 64 * 1024;
+
+    private final ByteArrayOutputStream earlyInput = new ByteArrayOutputStream();
+    // Runs requested by the reader, begun and finished by the session thread, and the last one cancelled.
+    private long requested;
+    private long begun;
+    private long finished;
+    private long cancelled;
+    private boolean inputClosed;
+    private OutputStream programInput;
+    private Runnable stopAction;
+
+    /** Reader: the input now names a new run; what follows belongs to its program. */
+    synchronized void requestRun() {
+        requested++;
+        earlyInput.reset();
+    }
+
+    /**
+     * Reader: passes {@code data} to the latest requested run, holding it until the program
+     * starts. Returns false when no run is pending or running, so the data is not program input.
+     */
+    boolean forward(byte[] data) {
+        OutputStream input;
+        synchronized (this) {
+            if (requested == finished) {
+                return false;
+            }
+            if (programInput == null || begun != requested) {
+                if (earlyInput.size() + data.length <= MAX_EARLY_INPUT_BYTES) {
+                    earlyInput.write(data, 0, data.length);
+                }
+                return true;
+            }
+            input = programInput;
+        }
+        write(input, data, false);
+        return true;
+    }
+
+    /** Reader: stops the latest requested run, now if its program is running, else as soon as it starts. */
+    void cancel() {
+        Runnable stop;
+        synchronized (this) {
+            if (requested == finished) {
+                return;
+            }
+            cancelled = requested;
+            stop = begun == requested ? stopAction : null;
+        }
+        if (stop != null) {
+            stop.run();
+        }
+    }
+
+    /** Reader: end of input; the running program, and any that starts later, sees end of its stdin. */
+    void closeInput() {
+        OutputStream input;
+        synchronized (this) {
+            inputClosed = true;
+            input = begun == requested ? programInput : null;
+        }
+        if (input != null) {
+            write(input, new byte[0], true);
+        }
+    }
+
+    /** Session thread: the next requested run starts. */
+    synchronized void begin() {
+        begun++;
+    }
+
+    /** Session thread: whether the current run was cancelled or replaced by a newer one. */
+    synchronized boolean isCancelled() {
+        return cancelled >= begun || requested > begun;
+    }
+
+    /**
+     * Session thread: the current run's program started; input typed ahead is sent to it and
+     * {@code stop} is how to stop it. A run cancelled before this point is stopped right away.
+     */
+    void attach(OutputStream input, Runnable stop) {
+        byte[] early;
+        boolean stopNow;
+        boolean closeNow;
+        synchronized (this) {
+            programInput = input;
+            stopAction = stop;
+            boolean latest = begun == requested;
+            early = latest ? earlyInput.toByteArray() : new byte[0];
+            earlyInput.reset();
+            stopNow = cancelled >= begun || !latest;
+            closeNow = latest && inputClosed;
+        }
+        if (stopNow) {
+            stop.run();
+            return;
+        }
+        if (early.length > 0 || closeNow) {
+            write(input, early, closeNow);
+        }
+    }
+
+    /** Session thread: the current run's program is gone; input goes nowhere until the next one. */
+    synchronized void detach() {
+        programInput = null;
+        stopAction = null;
+    }
+
+    /** Session thread: the current run is over. */
+    synchronized void end() {
+        detach();
+        finished = begun;
+        if (requested == finished) {
+            earlyInput.reset();
+        }
+    }
+
+    private static void write(OutputStream input, byte[] data, boolean close) {
+        try {
+            input.write(data);
+            input.flush();
+            if (close) {
+                input.close();
+            }
+        } catch (IOException e) {
+            // The program already exited or closed its stdin.
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.session;
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * JVM flags for user programs. {@code startup} (C1 only, serial GC) suits the short programs
+ * most practicals are; {@code throughput} keeps the full tiered compiler and uses the parallel
+ * collector for programs that compute for seconds; {@code low-memory} also trims the JVM's own
+ * footprint in small containers. The backend's container runners use the same sets
+ * ({@code src/utils/execution/javaRunProfiles.js}).
+ *
+ * <p>{@code JAVA_RUN_PROFILE} pins one. By default a container below {@code JAVA_LOW_MEMORY_MB}
+ * gets low-memory, and otherwise the previous run of the same entry point decides: throughput
+ * once it used {@code JAVA_THROUGHPUT_CPU_MS} of CPU, startup otherwise. Previous runs are kept
+ * for the session.
+ */
+final class RunProfile {
+    static final RunProfile STARTUP = new RunProfile("startup",
+            "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-XX:MaxRAMPercentage=50");
+    static final RunProfile THROUGHPUT = new RunProfile("throughput",
+            "-XX:+UseParallelGC", "-XX:MaxRAMPercentage=50");
+    static final RunProfile LOW_MEMORY = new RunProfile("low-memory",
+            "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-XX:MaxRAMPercentage=40",
+            "-XX:ReservedCodeCacheSize=16m", "-XX:-UsePerfData");
+
+    private static final long THROUGHPUT_CPU_MILLIS = intFromEnv("JAVA_THROUGHPUT_CPU_MS", 1000);
+    private static final long LOW_MEMORY_BYTES = intFromEnv("JAVA_LOW_MEMORY_MB", 96) * 1024L * 1024L;
+    private static final RunProfile PINNED = named(stringFromEnv("JAVA_RUN_PROFILE", "auto"));
+
+    final String name;
+    final List<String> flags;
+
+    private RunProfile(String name, String... flags) {
+        this.name = name;
+        this.flags = List.of(flags);
+    }
+
+    // Leading space included, like CdsArchives.shellFlags.
+    String shellFlags() {
+        return " " + String.join(" ", flags);
+    }
+
+    /**
+     * The profile for JVMs booted before the program is known, such as standbys and warm
+     * runners: the pinned one, or the one the container's memory calls for.
+     */
+    static RunProfile base() {
+        if (PINNED != null) {
+            return PINNED;
+        }
+        // Container-aware: the cgroup limit when there is one, the host's memory otherwise.
+        long memory = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getTotalMemorySize();
+        return memory > 0 && memory < LOW_MEMORY_BYTES ? LOW_MEMORY : STARTUP;
+    }
+
+    /** The profile for the next run of {@code entryClass}. */
+    static RunProfile choose(String entryClass) {
+        RunProfile base = base();
+        if (base != STARTUP || PINNED != null) {
+            return base;
+        }
+        String[] previous = readHistory(entryClass);
+        if (previous == null) {
+            return STARTUP;
+        }
+        long cpuMillis = Long.parseLong(previous[1]);
+        // Full tiering makes a heavy program cheaper; it stays there until it is much lighter.
+        long threshold = THROUGHPUT.name.equals(previous[0]) ? THROUGHPUT_CPU_MILLIS / 4 : THROUGHPUT_CPU_MILLIS;
+        return cpuMillis >= threshold ? THROUGHPUT : STARTUP;
+    }
+
+    /** Remembers how much CPU a run of {@code entryClass} took under {@code profile}. */
+    static void record(String entryClass, RunProfile profile, long cpuMillis) {
+        if (cpuMillis <= 0) {
+            // Not measured; keep what the last measured run said.
+            return;
+        }
+        session().runHistory.put(entryClass, profile.name + " " + cpuMillis);
+    }
+
+    private static RunProfile named(String name) {
+        for (RunProfile profile : List.of(STARTUP, THROUGHPUT, LOW_MEMORY)) {
+            if (profile.name.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    // {profile, cpuMillis} of the previous run, or null.
+    private static String[] readHistory(String entryClass) {
+        String entry = session().runHistory.get(entryClass);
+        return entry == null ? null : entry.split(" ");
+    }
+}
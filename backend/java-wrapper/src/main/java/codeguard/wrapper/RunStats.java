@@ -0,0 +1,48 @@
+package codeguard.wrapper;
+
+/**
+ * Telemetry for one {@code __RUN_CODE__} batch, printed as a single
+ * {@code __RUN_STATS__:<nonce> key=value ...} line after the run so the backend can collect it.
+ * Cold runs and forked javac are measured with {@link ProcessSampler}; warm runs report the
+ * runner JVM's CPU time for the run and its high-water RSS. {@code profile} names the
+ * {@link RunProfile} the program's JVM was started with.
+ */
+final class RunStats {
+    String mode = "none";
+    String profile = "none";
+    boolean cgroup;
+    String compiler = "none";
+    boolean compiled;
+    long resolveMillis;
+    long compileMillis;
+    long compileCpuMillis;
+    int compiledFiles;
+    long runMillis;
+    long runCpuMillis;
+    long peakRssKb;
+    long totalMillis;
+    int exitCode = -1;
+    boolean timedOut;
+    boolean cpuLimitExceeded;
+    boolean cancelled;
+
+    String fields() {
+        return "mode=" + mode
+                + " profile=" + profile
+                + " cgroup=" + (cgroup ? 1 : 0)
+                + " exit=" + exitCode
+                + " timed_out=" + (timedOut ? 1 : 0)
+                + " cpu_limit=" + (cpuLimitExceeded ? 1 : 0)
+                + " cancelled=" + (cancelled ? 1 : 0)
+                + " compiler=" + compiler
+                + " compiled=" + (compiled ? 1 : 0)
+                + " compiled_files=" + compiledFiles
+                + " resolve_ms=" + resolveMillis
+                + " compile_ms=" + compileMillis
+                + " compile_cpu_ms=" + compileCpuMillis
+                + " run_ms=" + runMillis
+                + " run_cpu_ms=" + runCpuMillis
+                + " peak_rss_kb=" + peakRssKb
+                + " total_ms=" + totalMillis;
+    }
+}
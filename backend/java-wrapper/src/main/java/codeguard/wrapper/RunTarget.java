@@ -0,0 +1,16 @@
+package codeguard.wrapper;
+
+/** The user's entry class and how {@link Launcher} starts it. */
+final class RunTarget {
+    final String entryClass;
+    final boolean applet;
+
+    RunTarget(String entryClass, boolean applet) {
+        this.entryClass = entryClass;
+        this.applet = applet;
+    }
+
+    String mode() {
+        return applet ? "applet" : "main";
+    }
+}
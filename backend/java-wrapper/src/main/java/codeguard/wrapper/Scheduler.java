@@ -0,0 +1,49 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.RESET;
+import static codeguard.wrapper.InteractiveWrapper.YELLOW;
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.out;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds concurrent compiles and runs across all sessions of a wrapper process. Compiles are
+ * CPU bound and default to one slot per CPU; runs include programs waiting on user input and
+ * default to twice that. Only contended in server mode.
+ */
+final class Scheduler {
+    static final int COMPILE_SLOTS = intFromEnv("JAVA_SERVER_COMPILE_SLOTS", Runtime.getRuntime().availableProcessors());
+    static final int RUN_SLOTS = intFromEnv("JAVA_SERVER_RUN_SLOTS", 2 * Runtime.getRuntime().availableProcessors());
+    private static final Semaphore COMPILES = new Semaphore(COMPILE_SLOTS, true);
+    private static final Semaphore RUNS = new Semaphore(RUN_SLOTS, true);
+
+    static void acquireCompile() throws InterruptedException {
+        acquire(COMPILES, "compile");
+    }
+
+    static void releaseCompile() {
+        COMPILES.release();
+    }
+
+    static void acquireRun() throws InterruptedException {
+        acquire(RUNS, "run");
+    }
+
+    static void releaseRun() {
+        RUNS.release();
+    }
+
+    private static void acquire(Semaphore slots, String kind) throws InterruptedException {
+        if (slots.tryAcquire()) {
+            return;
+        }
+        out().println(YELLOW + "⏳ Server busy, waiting for a free " + kind + " slot..." + RESET);
+        out().flush();
+        long started = System.nanoTime();
+        slots.acquire();
+        serverLog("waited for " + kind + " slot ms=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+}
@@ -0,0 +1,74 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.CANCEL_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.END_TESTS_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.FILE_START_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.PROFILE_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.RUN_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.RUN_TESTS_SENTINEL;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The reading side of the line-based sentinel protocol. A thread of its own reads stdin, so
+ * the session keeps hearing from the client while a program runs: lines that arrive between
+ * {@code __RUN_CODE__} and the end of that run are the program's input, {@code __CANCEL__}
+ * stops the program, and the start of a new batch stops it too. Everything else is queued for
+ * {@link #runSentinelSession} in order.
+ */
+final class SentinelInput {
+    private final BlockingQueue<Optional<String>> lines = new LinkedBlockingQueue<>();
+    private boolean ended;
+
+    SentinelInput(BufferedReader reader, RunControl control) {
+        Thread thread = new Thread(() -> {
+            // Inside a batch's files or test cases, whose lines are never program input.
+            boolean inBatch = false;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String trimmed = line.trim();
+                    if (CANCEL_SENTINEL.equals(trimmed)) {
+                        control.cancel();
+                        continue;
+                    }
+                    if (trimmed.startsWith(FILE_START_SENTINEL) || trimmed.startsWith(RUN_TESTS_SENTINEL)) {
+                        control.cancel();
+                        inBatch = true;
+                    } else if (RUN_SENTINEL.equals(trimmed) || PROFILE_SENTINEL.equals(trimmed)) {
+                        control.cancel();
+                        control.requestRun();
+                        inBatch = false;
+                    } else if (END_TESTS_SENTINEL.equals(trimmed)) {
+                        inBatch = false;
+                    } else if (!inBatch && control.forward((line + "\n").getBytes(Charset.defaultCharset()))) {
+                        continue;
+                    }
+                    lines.add(Optional.of(line));
+                }
+            } catch (IOException e) {
+                serverLog("Input closed: " + e.getMessage());
+            }
+            control.closeInput();
+            lines.add(Optional.empty());
+        }, "sentinel-stdin");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** The next line for the session, or null at end of input. */
+    String readLine() throws InterruptedException {
+        if (ended) {
+            return null;
+        }
+        Optional<String> line = lines.take();
+        ended = line.isEmpty();
+        return line.orElse(null);
+    }
+}
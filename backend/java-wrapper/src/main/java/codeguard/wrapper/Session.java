@@ -0,0 +1,44 @@
+package codeguard.wrapper;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State of one interactive session: its directory, output streams, run control, warm
+ * runner or standby JVMs, and incremental build. A wrapper process normally serves exactly one session on its
+ * stdin and stdout; in server mode it serves one per connection. The session is bound to the
+ * thread serving it and inherited by the threads that thread starts, such as output pumps.
+ */
+final class Session {
+    final Path workspace;
+    final Path dir;
+    final PrintStream out;
+    final PrintStream err;
+    final LineTracker lines;
+    final boolean shared;
+    // Tags the session's trailer lines; set by the backend, empty when run by hand.
+    volatile String trailerNonce = "";
+    // Where the thread reading the session's input sends program stdin and cancel requests.
+    final RunControl control = new RunControl();
+    // Long-lived child JVM used when JAVA_RUN_MODE=warm; null runs every program in a fresh JVM.
+    WarmRunner warmRunner;
+    // Pre-booted JVMs for those fresh runs; null unless JAVA_STANDBY=on, and in warm mode.
+    StandbyPool standby;
+    // What the last compile produced, so the next batch only recompiles what changed.
+    final IncrementalBuild build = new IncrementalBuild();
+    // RunProfile history by entry class: "<profile> <cpuMillis>" of its last measured run.
+    final Map<String, String> runHistory = new HashMap<>();
+
+    Session(Path workspace, Path dir, OutputStream out, OutputStream err, Charset charset, boolean shared) {
+        this.workspace = workspace;
+        this.dir = dir;
+        this.lines = new LineTracker(out);
+        this.out = new PrintStream(lines, true, charset);
+        this.err = err == out ? this.out : new PrintStream(err, true, charset);
+        this.shared = shared;
+    }
+}
@@ -0,0 +1,75 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.CURRENT_SESSION;
+import static codeguard.wrapper.InteractiveWrapper.SERVER_LOG_PREFIX;
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.serveSession;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server mode ({@code --server <socket>}): one wrapper JVM per container accepts sessions on a
+ * Unix domain socket, each connection speaking the framed protocol. Every session gets its own
+ * {@code java_session_*} directory and thread (virtual when the JDK has them), while compiles
+ * and runs across sessions go through {@link Scheduler} so a burst of runs cannot oversubscribe
+ * the container's CPUs.
+ */
+final class SessionServer {
+    private static final AtomicInteger SESSION_IDS = new AtomicInteger();
+
+    static void serve(Path workspace, Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        Workspace.keepSpares(intFromEnv("JAVA_WORKSPACE_SPARE_DIRS", 2));
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            serverLog("session server listening on " + socketPath + " compile_slots=" + Scheduler.COMPILE_SLOTS
+                    + " run_slots=" + Scheduler.RUN_SLOTS);
+            while (true) {
+                SocketChannel client = server.accept();
+                String id = "s" + SESSION_IDS.incrementAndGet();
+                newSessionThread(() -> handle(workspace, id, client), "session-" + id).start();
+            }
+        } finally {
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private static void handle(Path workspace, String id, SocketChannel client) {
+        try (SocketChannel channel = client) {
+            OutputStream out = new ChannelOutputStream(channel);
+            Session session = new Session(workspace, Workspace.newSessionDir(), out, out, StandardCharsets.UTF_8, true);
+            CURRENT_SESSION.set(session);
+            System.out.println(SERVER_LOG_PREFIX + " session " + id + " opened dir=" + session.dir.getFileName());
+            serveSession(session, channel);
+        } catch (IOException e) {
+            System.out.println(SERVER_LOG_PREFIX + " session " + id + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            CURRENT_SESSION.remove();
+            System.out.println(SERVER_LOG_PREFIX + " session " + id + " closed");
+        }
+    }
+
+    // Virtual threads when running on a JDK that has them; this code still compiles for Java 17.
+    private static Thread newSessionThread(Runnable task, String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class).invoke(builder, name);
+            return (Thread) builderType.getMethod("unstarted", Runnable.class).invoke(builder, task);
+        } catch (ReflectiveOperationException e) {
+            return new Thread(task, name);
+        }
+    }
+}
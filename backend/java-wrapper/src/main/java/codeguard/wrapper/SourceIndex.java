@@ -0,0 +1,247 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.listJavaFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Package, top-level types with a {@code main} method and applet subclasses of each source
+ * file. A single pass over the tokens of the file replaces the regex rescans: comments and
+ * string, character and text-block literals are skipped, so they cannot fool it. Entries are
+ * cached by content hash across batches and sessions.
+ */
+final class SourceIndex {
+    private static final int MAX_ENTRIES = 1024;
+    private static final Set<String> TYPE_KEYWORDS = Set.of("class", "interface", "enum", "record");
+    private static final Set<String> APPLET_TYPES = Set.of(
+            "Applet", "JApplet", "java.applet.Applet", "javax.swing.JApplet");
+    private static final Map<String, Entry> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            });
+
+    static final class Entry {
+        final String packageName;
+        // Every top-level type in source order; IncrementalBuild maps class files back to files with it.
+        final List<String> types;
+        // Simple names in source order, public types first.
+        final List<String> mainClasses;
+        final List<String> appletClasses;
+
+        Entry(String packageName, List<String> types, List<String> mainClasses, List<String> appletClasses) {
+            this.packageName = packageName;
+            this.types = types;
+            this.mainClasses = mainClasses;
+            this.appletClasses = appletClasses;
+        }
+
+        String mainClass() {
+            return mainClasses.isEmpty() ? null : qualify(mainClasses.get(0));
+        }
+
+        String appletClass() {
+            return appletClasses.isEmpty() ? null : qualify(appletClasses.get(0));
+        }
+
+        private String qualify(String simpleName) {
+            return packageName == null ? simpleName : packageName + "." + simpleName;
+        }
+    }
+
+    /**
+     * Entries for the session's files in path order. Sources come from memory; only a batch
+     * whose files were not tracked is read back from disk.
+     */
+    static Map<String, Entry> forSession(Path dir, Map<String, String> sources) throws IOException {
+        Map<String, String> files = new TreeMap<>(sources);
+        if (files.isEmpty()) {
+            for (String relativePath : listJavaFiles(dir)) {
+                files.put(relativePath, Files.readString(dir.resolve(relativePath), StandardCharsets.UTF_8));
+            }
+        }
+        Map<String, Entry> index = new LinkedHashMap<>();
+        files.forEach((path, source) -> index.put(path, lookup(source)));
+        return index;
+    }
+
+    /** Indexes {@code source} unless a file with the same content was indexed before. */
+    static Entry lookup(String source) {
+        String key = contentKey(source);
+        Entry entry = CACHE.get(key);
+        if (entry == null) {
+            entry = index(source);
+            CACHE.put(key, entry);
+        }
+        return entry;
+    }
+
+    static Entry index(String source) {
+        List<String> tokens = tokenize(source);
+        String packageName = null;
+        List<String> types = new ArrayList<>();
+        List<String> publicMains = new ArrayList<>();
+        List<String> otherMains = new ArrayList<>();
+        List<String> applets = new ArrayList<>();
+
+        int depth = 0;
+        // Top-level type whose body is open, and modifiers seen since the last declaration boundary.
+        String type = null;
+        boolean typePublic = false;
+        boolean typeIsInterface = false;
+        boolean typeHasMain = false;
+        Set<String> modifiers = new HashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            String previous = i > 0 ? tokens.get(i - 1) : "";
+            if (depth == 0 && "package".equals(token)) {
+                StringBuilder name = new StringBuilder();
+                while (i + 1 < tokens.size() && !";".equals(tokens.get(i + 1))) {
+                    name.append(tokens.get(++i));
+                }
+                packageName = name.toString();
+            } else if (depth == 0 && TYPE_KEYWORDS.contains(token) && !".".equals(previous)
+                    && i + 1 < tokens.size() && isIdentifier(tokens.get(i + 1))) {
+                type = tokens.get(++i);
+                types.add(type);
+                typePublic = modifiers.contains("public");
+                typeIsInterface = "interface".equals(token);
+                typeHasMain = false;
+                if ("class".equals(token) && i + 2 < tokens.size() && "extends".equals(tokens.get(i + 1))) {
+                    StringBuilder superclass = new StringBuilder(tokens.get(i + 2));
+                    for (int j = i + 3; j + 1 < tokens.size() && ".".equals(tokens.get(j)); j += 2) {
+                        superclass.append('.').append(tokens.get(j + 1));
+                    }
+                    if (APPLET_TYPES.contains(superclass.toString())) {
+                        applets.add(type);
+                    }
+                }
+            } else if ("{".equals(token)) {
+                depth++;
+                modifiers.clear();
+            } else if ("}".equals(token)) {
+                depth = Math.max(0, depth - 1);
+                modifiers.clear();
+            } else if (";".equals(token)) {
+                modifiers.clear();
+            } else if (depth == 1 && type != null && !typeHasMain && "main".equals(token)
+                    && "void".equals(previous) && modifiers.contains("static")
+                    && (typeIsInterface || modifiers.contains("public"))
+                    && takesStringArray(tokens, i + 1)) {
+                typeHasMain = true;
+                (typePublic ? publicMains : otherMains).add(type);
+            } else if (isIdentifier(token)) {
+                modifiers.add(token);
+            }
+        }
+        publicMains.addAll(otherMains);
+        return new Entry(packageName, types, publicMains, applets);
+    }
+
+    // (String[] args), (String... args) or (String args[]), optionally final and java.lang-qualified.
+    private static boolean takesStringArray(List<String> tokens, int open) {
+        if (open >= tokens.size() || !"(".equals(tokens.get(open))) {
+            return false;
+        }
+        List<String> parameter = new ArrayList<>();
+        for (int i = open + 1; i < tokens.size() && !")".equals(tokens.get(i)); i++) {
+            parameter.add(tokens.get(i));
+        }
+        int k = !parameter.isEmpty() && "final".equals(parameter.get(0)) ? 1 : 0;
+        if (parameter.size() - k > 4
+                && parameter.subList(k, k + 4).equals(List.of("java", ".", "lang", "."))) {
+            k += 4;
+        }
+        if (k >= parameter.size() || !"String".equals(parameter.get(k))) {
+            return false;
+        }
+        List<String> rest = parameter.subList(k + 1, parameter.size());
+        String last = rest.isEmpty() ? "" : rest.get(rest.size() - 1);
+        return rest.size() == 3 && rest.subList(0, 2).equals(List.of("[", "]")) && isIdentifier(last)
+                || rest.size() == 4 && rest.subList(0, 3).equals(List.of(".", ".", ".")) && isIdentifier(last)
+                || rest.size() == 3 && isIdentifier(rest.get(0)) && rest.subList(1, 3).equals(List.of("[", "]"));
+    }
+
+    /** Identifiers and single-character symbols; comments and literals are dropped. */
+    private static List<String> tokenize(String source) {
+        List<String> tokens = new ArrayList<>();
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                int end = source.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (source.startsWith("\"\"\"", i)) {
+                i = skipLiteral(source, i + 3, "\"\"\"");
+                tokens.add("\"\"");
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(source, i + 1, String.valueOf(c));
+                tokens.add("\"\"");
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                tokens.add(source.substring(start, i));
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    // Index just past the closing delimiter, honouring backslash escapes.
+    private static int skipLiteral(String source, int from, String delimiter) {
+        for (int i = from; i < source.length(); i++) {
+            if (source.charAt(i) == '\\') {
+                i++;
+            } else if (source.startsWith(delimiter, i)) {
+                return i + delimiter.length();
+            } else if (delimiter.length() == 1 && source.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return source.length();
+    }
+
+    private static boolean isIdentifier(String token) {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    static String contentKey(String source) {
+        return contentKey(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String contentKey(byte[] bytes) {
+        try {
+            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.STANDBY_FLAG;
+import static codeguard.wrapper.InteractiveWrapper.acceptChild;
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.userJvmCommand;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Child JVMs booted ahead of the next cold run when {@code JAVA_STANDBY=on}, {@code JAVA_STANDBY_JVMS}
+ * per session (default one). Each idle standby holds about 35 MB of RSS for as long as its session
+ * lives, so the pool is off by default. A standby is started exactly like a cold run, with
+ * the same command and CPU limit in the session directory, and then blocks on a Unix
+ * domain socket. A run hands it the entry point; it runs that one program on its main thread
+ * and exits like any JVM, so each program still gets a process of its own. Replacements are
+ * forked after the run, off its critical path.
+ *
+ * <p>The standby's class path is the wrapper's plus the session directory, whose classes are
+ * only looked up once the program starts, so the standby can boot before they are compiled.
+ */
+final class StandbyPool {
+    static final int SIZE = intFromEnv("JAVA_STANDBY_JVMS", 1);
+    private static final AtomicInteger SPAWN_COUNTER = new AtomicInteger();
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    private final Path workspace;
+    private final Path dir;
+    private final Deque<Standby> standbys = new ArrayDeque<>();
+    // What the standbys are booted with; follows the profile of the last run.
+    private RunProfile profile = RunProfile.base();
+
+    static boolean isEnabled() {
+        return "on".equalsIgnoreCase(stringFromEnv("JAVA_STANDBY", "off"));
+    }
+
+    StandbyPool(Path workspace, Path dir) {
+        this.workspace = workspace;
+        this.dir = dir;
+        refill();
+    }
+
+    /**
+     * The process now running {@code target}, or null when no standby could take it. A standby
+     * joins {@code cgroup}, if given, before it learns what to run.
+     */
+    Process launch(RunTarget target, RunProfile profile, RunCgroup cgroup) throws InterruptedException {
+        if (profile != this.profile) {
+            // Booted with other flags; the refill after this run boots them with the new ones.
+            shutdown();
+            this.profile = profile;
+            return null;
+        }
+        Standby standby;
+        while ((standby = standbys.poll()) != null) {
+            if ((cgroup == null || cgroup.add(standby.process)) && standby.hand(target)) {
+                return standby.process;
+            }
+            standby.process.destroyForcibly();
+        }
+        return null;
+    }
+
+    void refill() {
+        standbys.removeIf(standby -> !standby.process.isAlive());
+        while (standbys.size() < SIZE) {
+            Standby standby = spawn();
+            if (standby == null) {
+                return;
+            }
+            standbys.add(standby);
+        }
+    }
+
+    void shutdown() {
+        standbys.forEach(standby -> standby.process.destroyForcibly());
+        standbys.clear();
+    }
+
+    private Standby spawn() {
+        Path socketPath = workspace.resolve(
+                "standby_" + ProcessHandle.current().pid() + "_" + SPAWN_COUNTER.incrementAndGet() + ".sock");
+        try {
+            Files.deleteIfExists(socketPath);
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+
+            // Same command as a cold run; the wrapper archive still maps with "." appended.
+            List<String> command = userJvmCommand(profile, CdsArchives.WRAPPER);
+            command.addAll(List.of("-cp", WarmRunner.wrapperClassPath() + File.pathSeparator + ".",
+                    InteractiveWrapper.class.getName(), STANDBY_FLAG, socketPath.toString()));
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.directory(dir.toFile());
+            Process process = pb.start();
+            return new Standby(process, acceptChild(server, socketPath, process));
+        } catch (IOException e) {
+            serverLog("Failed to start standby JVM: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static final class Standby {
+        final Process process;
+        final CompletableFuture<SocketChannel> connection;
+
+        Standby(Process process, CompletableFuture<SocketChannel> connection) {
+            this.process = process;
+            this.connection = connection;
+        }
+
+        // Waits for a standby that is still booting: that is never slower than booting a new one.
+        boolean hand(RunTarget target) throws InterruptedException {
+            try (SocketChannel channel = connection.get(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                WarmRunner.writeLine(channel,
+                        "RUN\t" + target.mode() + "\t" + target.entryClass);
+                return true;
+            } catch (ExecutionException | TimeoutException | IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /** Standby side: waits for its one program, then hands it to {@link Launcher} like a cold JVM. */
+    static void childMain(String socketPath) throws IOException {
+        String line;
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            line = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8)).readLine();
+        }
+        String[] parts = line == null ? new String[0] : line.split("\t", -1);
+        if (parts.length != 3 || !"RUN".equals(parts[0])) {
+            // The session ended before handing over a program.
+            return;
+        }
+
+        Launcher.main(new String[] {parts[1], parts[2]});
+    }
+}
@@ -0,0 +1,42 @@
+package codeguard.wrapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/** One row of the harness TSV payload. */
+final class TestCase {
+    final String id;
+    final String hidden;
+    final long timeLimitMillis;
+    final String expected;
+    final byte[] input;
+
+    private TestCase(String id, String hidden, long timeLimitMillis, String expected, byte[] input) {
+        this.id = id;
+        this.hidden = hidden;
+        this.timeLimitMillis = timeLimitMillis;
+        this.expected = expected;
+        this.input = input;
+    }
+
+    static TestCase parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 5 || fields[0].isBlank()) {
+            return null;
+        }
+        long timeLimitMillis;
+        try {
+            timeLimitMillis = Long.parseLong(fields[2].trim());
+        } catch (NumberFormatException e) {
+            timeLimitMillis = 2000;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        try {
+            return new TestCase(fields[0], fields[1], timeLimitMillis,
+                    new String(decoder.decode(fields[3].trim()), StandardCharsets.UTF_8),
+                    decoder.decode(fields[4].trim()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package codeguard.wrapper;
+
+/**
+ * How one test case ended. memoryKb is the case's heap peak when it ran in the test runner, and
+ * the peak RSS of its JVM when it ran in a JVM of its own.
+ */
+final class TestResult {
+    final int exitCode;
+    final boolean timedOut;
+    final boolean outOfMemory;
+    // Stopped at the first definitive mismatch with the expected output.
+    final boolean stopped;
+    // The OutputVerifier's verdict; null when the output was captured without one.
+    final Boolean outputMatches;
+    final long timeMillis;
+    final long memoryKb;
+    final byte[] stdout;
+    final byte[] stderr;
+
+    TestResult(int exitCode, boolean timedOut, boolean outOfMemory, boolean stopped, Boolean outputMatches,
+            long timeMillis, long memoryKb, byte[] stdout, byte[] stderr) {
+        this.exitCode = exitCode;
+        this.timedOut = timedOut;
+        this.outOfMemory = outOfMemory;
+        this.stopped = stopped;
+        this.outputMatches = outputMatches;
+        this.timeMillis = timeMillis;
+        this.memoryKb = memoryKb;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+}
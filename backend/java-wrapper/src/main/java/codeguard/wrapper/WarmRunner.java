@@ -0,0 +1,713 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.SIGKILL;
+import static codeguard.wrapper.InteractiveWrapper.WARM_RUNNER_FLAG;
+import static codeguard.wrapper.InteractiveWrapper.acceptChild;
+import static codeguard.wrapper.InteractiveWrapper.err;
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.out;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+import static codeguard.wrapper.InteractiveWrapper.session;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Permission;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * A child JVM that stays alive for the whole session and runs each program in a throwaway
+ * class loader. The wrapper talks to it over a Unix domain socket so that the child's stdin,
+ * stdout and stderr stay connected to the user exactly like a freshly forked program.
+ *
+ * <p>Control protocol, one tab-separated line per message:
+ * child sends {@code READY threads heapBytes}, wrapper sends {@code RUN classDir main|applet entryClass},
+ * child answers {@code DONE exitCode leakedThreads heapBytes}; {@code QUIT} stops the child. A
+ * test runner instead gets {@code TEST classDir main|applet entryClass timeoutMillis input expected}
+ * and answers with a {@code CASE} line holding the case's verdict flags, heap peak and output.
+ */
+final class WarmRunner {
+    private static final AtomicInteger SPAWN_COUNTER = new AtomicInteger();
+    private static final String EOF_REPLY = "EOF";
+
+    final RunProfile profile;
+    private final Process process;
+    private final CompletableFuture<SocketChannel> connection;
+    // Null for test runners, whose output is captured per test case.
+    private final OutputPump pump;
+    // Only test runners are bounded and sampled; an interactive one runs under its session's limits.
+    private final ProcessSampler sampler;
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private final int maxRuns = intFromEnv("WARM_RUNNER_MAX_RUNS", 25);
+    private final long maxHeapGrowthBytes = intFromEnv("WARM_RUNNER_MAX_HEAP_GROWTH_MB", 32) * 1024L * 1024L;
+    private SocketChannel commands;
+    private long baselineHeapBytes = -1;
+    private int runs;
+    private String recycleReason;
+
+    private WarmRunner(RunProfile profile, Process process, CompletableFuture<SocketChannel> connection,
+            OutputPump pump, ProcessSampler sampler) {
+        this.profile = profile;
+        this.process = process;
+        this.connection = connection;
+        this.pump = pump;
+        this.sampler = sampler;
+    }
+
+    /**
+     * The runner's stdout and stderr are copied to the user, and its stdin is fed through the
+     * session's {@link RunControl}.
+     */
+    static WarmRunner spawn(Path workspace, Path workingDir) {
+        return spawn(workspace, workingDir, RunProfile.base(), 0);
+    }
+
+    /**
+     * A runner for captured test cases, whose own streams are discarded. Its heap is sized like
+     * that of a fresh JVM capped at {@code JAVA_RUN_MEMORY_MB}, so a case that allocates past
+     * it fails with OutOfMemoryError. The runner as a whole is held to that cap too: in a run
+     * cgroup, or by a {@link ProcessSampler} that kills it once its RSS reaches it.
+     */
+    static WarmRunner spawnForTests(Path workspace, Path workingDir, RunProfile profile) {
+        return spawn(workspace, workingDir, profile, intFromEnv("JAVA_RUN_MEMORY_MB", 256));
+    }
+
+    // A positive memoryMb makes a test runner.
+    private static WarmRunner spawn(Path workspace, Path workingDir, RunProfile profile, long memoryMb) {
+        boolean interactive = memoryMb <= 0;
+        Path socketPath = workspace.resolve(
+                "warm_" + ProcessHandle.current().pid() + "_" + SPAWN_COUNTER.incrementAndGet() + ".sock");
+        try {
+            Files.deleteIfExists(socketPath);
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(profile.flags);
+            if (!interactive) {
+                // The profile's MaxRAMPercentage then gives the heap a capped fresh JVM would get.
+                command.add("-XX:MaxRAM=" + memoryMb + "m");
+            }
+            // Same class path as the wrapper itself, so the wrapper archive maps in the child too.
+            command.addAll(CdsArchives.jvmFlags(CdsArchives.WRAPPER));
+            // Lets the child install its System.exit trap on JDKs where the security manager is opt-in.
+            command.add("-Djava.security.manager=allow");
+            command.addAll(List.of("-cp", wrapperClassPath(),
+                    InteractiveWrapper.class.getName(), WARM_RUNNER_FLAG, socketPath.toString()));
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.directory(workingDir.toFile());
+            if (!interactive) {
+                pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+                pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+            }
+            Process process = pb.start();
+            OutputPump pump = null;
+            ProcessSampler sampler = null;
+            if (interactive) {
+                pump = new OutputPump();
+                pump.pump(process.getInputStream(), out(), "warm-runner-stdout", false);
+                pump.pump(process.getErrorStream(), err(), "warm-runner-stderr", true);
+            } else {
+                process.getOutputStream().close();
+                RunCgroup cgroup = RunCgroup.create();
+                if (cgroup != null && !cgroup.add(process)) {
+                    cgroup.release();
+                    cgroup = null;
+                }
+                // Case timeouts are enforced by the child, so the sampler only watches memory.
+                sampler = ProcessSampler.start(process, cgroup, 0,
+                        cgroup != null && cgroup.limitsMemory() ? 0 : memoryMb * 1024);
+            }
+
+            return new WarmRunner(profile, process, acceptChild(server, socketPath, process), pump, sampler);
+        } catch (IOException e) {
+            serverLog("Failed to start warm runner: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Absolute, because the child runs with the session directory as its working directory.
+    static String wrapperClassPath() {
+        return Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Paths.get(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    boolean isFresh() {
+        return runs == 0;
+    }
+
+    boolean needsRecycle() {
+        return recycleReason != null;
+    }
+
+    String recycleReason() {
+        return recycleReason;
+    }
+
+    /** Returns null when the child could not be used, so the caller can run in a fresh JVM. */
+    Result run(Path classDir, RunTarget target, int timeoutSeconds, int cpuLimitSeconds)
+            throws InterruptedException {
+        if (!awaitReady()) {
+            return null;
+        }
+        try {
+            send("RUN\t" + classDir + "\t" + target.mode() + "\t" + target.entryClass);
+        } catch (IOException e) {
+            return null;
+        }
+
+        Reply reply;
+        RunControl control = session().control;
+        Duration cpuBefore = cpuTime();
+        pump.startRun(() -> {
+            recycleReason = "output limit exceeded";
+            process.destroyForcibly();
+        });
+        // User code cannot be stopped reliably inside the runner, so a cancelled run takes the runner with it.
+        control.attach(process.getOutputStream(), () -> {
+            recycleReason = "run stopped";
+            process.destroyForcibly();
+        });
+        try {
+            reply = awaitReply("DONE", 6, TimeUnit.SECONDS.toNanos(timeoutSeconds), cpuLimitSeconds);
+        } finally {
+            control.detach();
+        }
+        long cpuMillis = cpuTime().minus(cpuBefore).toMillis();
+        long peakRssKb = ProcessSampler.readPeakRssKb(process.pid());
+        if (reply.parts == null) {
+            pump.awaitEnd(500);
+            return new Result(reply.exitCode, reply.timedOut, reply.cpuLimitExceeded, cpuMillis, peakRssKb);
+        }
+        // The child reports how much it has written in total, so the run's output is fully copied
+        // before the wrapper prints anything after it.
+        pump.awaitCopied(500, Long.parseLong(reply.parts[2]), Long.parseLong(reply.parts[3]));
+        return new Result(Integer.parseInt(reply.parts[1]), false, false, cpuMillis, peakRssKb);
+    }
+
+    /**
+     * Runs one captured test case in a fresh class loader. Returns null when the child could
+     * not be used. The child enforces the case timeout itself; the wrapper only steps in if it
+     * stops answering. memoryKb is the case's heap peak; a case that runs out of heap, or takes
+     * the whole runner past its memory cap, is out of memory.
+     */
+    TestResult runTest(Path classDir, RunTarget target, long timeoutMillis, byte[] input, String expected)
+            throws InterruptedException {
+        if (!awaitReady()) {
+            return null;
+        }
+        Base64.Encoder encoder = Base64.getEncoder();
+        try {
+            send("TEST\t" + classDir + "\t" + target.mode() + "\t" + target.entryClass
+                    + "\t" + timeoutMillis + "\t" + encoder.encodeToString(input) + "\t"
+                    + (expected == null ? "-" : encoder.encodeToString(expected.getBytes(StandardCharsets.UTF_8))));
+        } catch (IOException e) {
+            return null;
+        }
+
+        long started = System.nanoTime();
+        long graceNanos = TimeUnit.SECONDS.toNanos(5);
+        Reply reply = awaitReply("CASE", 12, TimeUnit.MILLISECONDS.toNanos(timeoutMillis) + graceNanos,
+                Integer.MAX_VALUE);
+        if (reply.parts == null) {
+            // Besides a timeout, only the memory cap kills the runner: the cgroup's OOM killer or the sampler.
+            boolean outOfMemory = !reply.timedOut
+                    && (sampler.memoryLimitExceeded() || reply.exitCode == 128 + SIGKILL);
+            return new TestResult(reply.exitCode, reply.timedOut, outOfMemory, false, null,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), sampler.peakRssKb(),
+                    new byte[0], new byte[0]);
+        }
+        String[] parts = reply.parts;
+        if ("1".equals(parts[2])) {
+            recycleReason = "test case timed out";
+        } else if ("1".equals(parts[3]) && recycleReason == null) {
+            recycleReason = "test case ran out of memory";
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        return new TestResult(Integer.parseInt(parts[1]), "1".equals(parts[2]), "1".equals(parts[3]),
+                "1".equals(parts[4]), "-".equals(parts[5]) ? null : "1".equals(parts[5]),
+                Long.parseLong(parts[6]), Long.parseLong(parts[7]), decoder.decode(parts[8]), decoder.decode(parts[9]));
+    }
+
+    /**
+     * Waits for a reply of the given kind whose last two fields are the leaked thread count and
+     * heap size, and updates the recycle decision. On timeout, CPU overrun or child death the
+     * child is killed and the returned reply has no parts.
+     */
+    private Reply awaitReply(String kind, int fieldCount, long timeoutNanos, int cpuLimitSeconds)
+            throws InterruptedException {
+        Duration cpuBefore = cpuTime();
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            String line = replies.poll(100, TimeUnit.MILLISECONDS);
+            if (line != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length == fieldCount && kind.equals(parts[0])) {
+                    runs++;
+                    int leakedThreads = Integer.parseInt(parts[fieldCount - 2]);
+                    long heapBytes = Long.parseLong(parts[fieldCount - 1]);
+                    if (leakedThreads > 0) {
+                        recycleReason = leakedThreads + " thread(s) still running after the program finished";
+                    } else if (heapBytes - baselineHeapBytes > maxHeapGrowthBytes) {
+                        recycleReason = "heap grew to " + (heapBytes / (1024 * 1024)) + " MB";
+                    } else if (runs >= maxRuns) {
+                        recycleReason = "reached " + maxRuns + " runs";
+                    }
+                    return new Reply(parts, 0, false, false);
+                }
+                // EOF or an unexpected message: the child is gone or out of sync.
+                if (recycleReason == null) {
+                    recycleReason = "runner exited";
+                }
+                process.destroyForcibly();
+                return new Reply(null, process.waitFor(), false, false);
+            }
+
+            if (System.nanoTime() > deadline) {
+                recycleReason = "run timed out";
+                process.destroyForcibly();
+                return new Reply(null, -1, true, false);
+            }
+            if (cpuTime().minus(cpuBefore).getSeconds() >= cpuLimitSeconds) {
+                recycleReason = "CPU limit exceeded";
+                process.destroyForcibly();
+                return new Reply(null, -1, false, true);
+            }
+        }
+    }
+
+    void shutdown() {
+        try {
+            if (commands != null) {
+                send("QUIT");
+            }
+        } catch (IOException ignored) {
+            // The child is already gone.
+        }
+        process.onExit().completeOnTimeout(process, 500, TimeUnit.MILLISECONDS).thenAccept(child -> {
+            // Processes started by programs it ran go with it.
+            child.descendants().forEach(ProcessHandle::destroyForcibly);
+            child.destroyForcibly();
+            if (sampler != null) {
+                sampler.release();
+            }
+        });
+    }
+
+    private boolean awaitReady() throws InterruptedException {
+        if (commands != null) {
+            return process.isAlive();
+        }
+        try {
+            SocketChannel channel = connection.get(10, TimeUnit.SECONDS);
+            commands = channel;
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            Thread readerThread = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        replies.add(line);
+                    }
+                } catch (IOException ignored) {
+                    // Treated like end of stream.
+                }
+                replies.add(EOF_REPLY);
+            }, "warm-runner-replies");
+            readerThread.setDaemon(true);
+            readerThread.start();
+
+            String[] ready = replies.take().split("\t");
+            if (ready.length != 3 || !"READY".equals(ready[0])) {
+                return false;
+            }
+            baselineHeapBytes = Long.parseLong(ready[2]);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            process.destroyForcibly();
+            return false;
+        }
+    }
+
+    private void send(String command) throws IOException {
+        writeLine(commands, command);
+    }
+
+    // Written straight to the channel: stream adapters would block on the lock held by a pending read.
+    static void writeLine(SocketChannel channel, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private Duration cpuTime() {
+        return process.info().totalCpuDuration().orElse(Duration.ZERO);
+    }
+
+    static final class Result {
+        final int exitCode;
+        final boolean timedOut;
+        final boolean cpuLimitExceeded;
+        final long cpuMillis;
+        final long peakRssKb;
+
+        Result(int exitCode, boolean timedOut, boolean cpuLimitExceeded, long cpuMillis, long peakRssKb) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.cpuLimitExceeded = cpuLimitExceeded;
+            this.cpuMillis = cpuMillis;
+            this.peakRssKb = peakRssKb;
+        }
+    }
+
+    private static final class Reply {
+        final String[] parts;
+        final int exitCode;
+        final boolean timedOut;
+        final boolean cpuLimitExceeded;
+
+        Reply(String[] parts, int exitCode, boolean timedOut, boolean cpuLimitExceeded) {
+            this.parts = parts;
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.cpuLimitExceeded = cpuLimitExceeded;
+        }
+    }
+
+    // ---- Child side -------------------------------------------------------------------------
+
+    static void childMain(String socketPath) throws IOException {
+        ExitTrap trap = new ExitTrap();
+        if (!trap.install()) {
+            // Without the trap a System.exit would take the runner down mid-protocol.
+            System.exit(2);
+        }
+
+        SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        writeLine(channel, "READY\t" + Thread.activeCount() + "\t" + usedHeapAfterGc());
+
+        int runNumber = 0;
+        // Bytes written to our stdout and stderr so far, reported so the wrapper knows when it has seen them all.
+        AtomicLong stdoutBytes = new AtomicLong();
+        AtomicLong stderrBytes = new AtomicLong();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] parts = line.split("\t", -1);
+            ThreadGroup group = new RunThreadGroup("run-" + (++runNumber));
+            if (parts.length == 4 && "RUN".equals(parts[0])) {
+                // Fresh per-run streams; closing them never closes the runner's own file descriptors.
+                RunOutcome outcome = runInFreshLoader(group, Paths.get(parts[1]), "applet".equals(parts[2]),
+                        parts[3], trap, nonClosingStdIn(), nonClosingStdStream(FileDescriptor.out, stdoutBytes),
+                        nonClosingStdStream(FileDescriptor.err, stderrBytes), 0, null);
+                writeLine(channel, "DONE\t" + outcome.exitCode + "\t" + stdoutBytes.get() + "\t" + stderrBytes.get()
+                        + "\t" + aliveThreads(group).size() + "\t" + usedHeapAfterGc());
+            } else if (parts.length == 7 && "TEST".equals(parts[0])) {
+                writeLine(channel, runCapturedTest(group, parts, trap));
+            } else {
+                break;
+            }
+        }
+
+        trap.disarm();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static String runCapturedTest(ThreadGroup group, String[] parts, ExitTrap trap) {
+        Base64.Decoder decoder = Base64.getDecoder();
+        OutputVerifier stdout = new OutputVerifier(
+                "-".equals(parts[6]) ? null : new String(decoder.decode(parts[6]), StandardCharsets.UTF_8));
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        long started = System.nanoTime();
+        RunOutcome outcome = runInFreshLoader(group, Paths.get(parts[1]), "applet".equals(parts[2]), parts[3],
+                trap, new ByteArrayInputStream(decoder.decode(parts[5])),
+                new PrintStream(stdout, true, StandardCharsets.UTF_8),
+                new PrintStream(stderr, true, StandardCharsets.UTF_8), Long.parseLong(parts[4]), stdout);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        stdout.finish();
+
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        Base64.Encoder encoder = Base64.getEncoder();
+        Boolean matches = stdout.matches();
+        return "CASE\t" + outcome.exitCode + "\t" + (outcome.timedOut ? 1 : 0) + "\t" + (outcome.outOfMemory ? 1 : 0)
+                + "\t" + (outcome.stopped ? 1 : 0) + "\t" + (matches == null ? "-" : matches ? "1" : "0")
+                + "\t" + elapsedMillis + "\t" + (peakHeapBytes / 1024)
+                + "\t" + encoder.encodeToString(stdout.output())
+                + "\t" + encoder.encodeToString(stderr.toByteArray())
+                + "\t" + aliveThreads(group).size() + "\t" + usedHeapAfterGc();
+    }
+
+    /**
+     * Runs the entry point in a new class loader with the given streams; 0 means no timeout. With a
+     * {@code verifier}, the run is abandoned like a timed-out one once its output cannot match.
+     */
+    private static RunOutcome runInFreshLoader(ThreadGroup group, Path classDir, boolean applet, String entryClass,
+            ExitTrap trap, InputStream in, PrintStream out, PrintStream err, long timeoutMillis,
+            OutputVerifier verifier) {
+        InputStream savedIn = System.in;
+        PrintStream savedOut = System.out;
+        PrintStream savedErr = System.err;
+        Properties savedProperties = (Properties) System.getProperties().clone();
+        AtomicInteger exitCode = new AtomicInteger(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        boolean timedOut = false;
+        boolean stopped = false;
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {classDir.toUri().toURL()},
+                ClassLoader.getPlatformClassLoader())) {
+            System.setIn(in);
+            System.setOut(out);
+            System.setErr(err);
+
+            Thread mainThread = new Thread(group,
+                    () -> invokeEntry(loader, applet, entryClass, exitCode, failure), "main");
+            mainThread.setContextClassLoader(loader);
+            long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+            trap.arm();
+            mainThread.start();
+
+            // Like a normal JVM, the program ends when its last non-daemon thread does or on System.exit.
+            while (!trap.exitRequested()) {
+                Thread alive = aliveThreads(group).stream().filter(t -> !t.isDaemon()).findFirst().orElse(null);
+                if (alive == null) {
+                    break;
+                }
+                if (deadline != 0 && System.nanoTime() > deadline) {
+                    timedOut = true;
+                    break;
+                }
+                if (verifier != null && verifier.mismatched()) {
+                    stopped = true;
+                    break;
+                }
+                alive.join(20);
+            }
+        } catch (IOException e) {
+            exitCode.set(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode.set(1);
+        } finally {
+            Integer trapped = trap.disarm();
+            if (trapped != null) {
+                exitCode.set(trapped);
+            }
+            if (((RunThreadGroup) group).uncaughtInMain) {
+                exitCode.compareAndSet(0, 1);
+            }
+            System.out.flush();
+            System.err.flush();
+            System.setIn(savedIn);
+            System.setOut(savedOut);
+            System.setErr(savedErr);
+            System.setProperties(savedProperties);
+        }
+        return new RunOutcome(exitCode.get(), timedOut, stopped, failure.get() instanceof OutOfMemoryError);
+    }
+
+    private static final class RunOutcome {
+        final int exitCode;
+        final boolean timedOut;
+        final boolean stopped;
+        final boolean outOfMemory;
+
+        RunOutcome(int exitCode, boolean timedOut, boolean stopped, boolean outOfMemory) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.stopped = stopped;
+            this.outOfMemory = outOfMemory;
+        }
+    }
+
+    // Same Launcher as cold runs, so programs behave the same; a trapped System.exit is not a failure.
+    private static void invokeEntry(ClassLoader loader, boolean applet, String entryClass, AtomicInteger exitCode,
+            AtomicReference<Throwable> failure) {
+        Throwable error = Launcher.run(loader, applet, entryClass, new String[0],
+                cause -> cause instanceof ExitTrap.ExitRequest);
+        if (error != null) {
+            failure.set(error);
+            exitCode.set(1);
+        }
+    }
+
+    private static InputStream nonClosingStdIn() {
+        return new FilterInputStream(new FileInputStream(FileDescriptor.in)) {
+            @Override
+            public void close() {
+                // Keep the runner's stdin open when user code calls Scanner.close().
+            }
+        };
+    }
+
+    private static PrintStream nonClosingStdStream(FileDescriptor fd, AtomicLong written) {
+        OutputStream target = new FilterOutputStream(new FileOutputStream(fd)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                written.addAndGet(len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        // Same buffering and autoflush as the JVM's own System.out.
+        return new PrintStream(new BufferedOutputStream(target, 128), true, StandardCharsets.UTF_8);
+    }
+
+    private static List<Thread> aliveThreads(ThreadGroup group) {
+        Thread[] threads = new Thread[group.activeCount() + 8];
+        int count = group.enumerate(threads, true);
+        List<Thread> alive = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (threads[i].isAlive()) {
+                alive.add(threads[i]);
+            }
+        }
+        return alive;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Prints uncaught exceptions like the JVM does, but stays quiet about trapped exits. */
+    private static final class RunThreadGroup extends ThreadGroup {
+        volatile boolean uncaughtInMain;
+
+        RunThreadGroup(String name) {
+            super(name);
+        }
+
+        @Override
+        public void uncaughtException(Thread thread, Throwable error) {
+            if (error instanceof ExitTrap.ExitRequest) {
+                return;
+            }
+            if ("main".equals(thread.getName())) {
+                uncaughtInMain = true;
+            }
+            super.uncaughtException(thread, error);
+        }
+    }
+
+    /** Turns System.exit from user code into an exception so the runner JVM survives it. */
+    @SuppressWarnings("removal")
+    private static final class ExitTrap extends SecurityManager {
+        private volatile boolean armed;
+        private volatile Integer requestedStatus;
+
+        // JDK 17+ prints a deprecation banner to the JVM's initial stderr here, whatever System.err
+        // is; the parent's OutputPump drops it.
+        boolean install() {
+            try {
+                System.setSecurityManager(this);
+                return true;
+            } catch (UnsupportedOperationException | SecurityException e) {
+                return false;
+            }
+        }
+
+        void arm() {
+            requestedStatus = null;
+            armed = true;
+        }
+
+        Integer disarm() {
+            armed = false;
+            return requestedStatus;
+        }
+
+        boolean exitRequested() {
+            return requestedStatus != null;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (armed) {
+                if (requestedStatus == null) {
+                    requestedStatus = status;
+                }
+                throw new ExitRequest(status);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            // Only exits are trapped; everything else is allowed as in a normal run.
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            // Only exits are trapped; everything else is allowed as in a normal run.
+        }
+
+        static final class ExitRequest extends SecurityException {
+            private static final long serialVersionUID = 1L;
+
+            ExitRequest(int status) {
+                super("System.exit(" + status + ")");
+            }
+        }
+    }
+}
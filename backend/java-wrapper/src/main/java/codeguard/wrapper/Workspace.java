@@ -0,0 +1,296 @@
+package codeguard.wrapper;
+
+import static codeguard.wrapper.InteractiveWrapper.intFromEnv;
+import static codeguard.wrapper.InteractiveWrapper.poolThreads;
+import static codeguard.wrapper.InteractiveWrapper.serverLog;
+import static codeguard.wrapper.InteractiveWrapper.stringFromEnv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The tree sessions keep their files in, shared by every wrapper in the container. Session,
+ * staging and trash directories carry the owning wrapper's pid, so that a wrapper starting up
+ * can reap what wrappers that died left behind. Finished directories and a batch's leftovers
+ * are renamed aside and deleted on a background thread instead of between a click and the
+ * compile; in server mode a few session directories are also created ahead of time. The root
+ * prefers tmpfs, and batches are refused while the tree is over its size budget.
+ */
+final class Workspace {
+    // The tmpfs the backend mounts into the Java container (dockerService, poolManager).
+    private static final Path DEFAULT_ROOT = Paths.get("/workspace");
+    private static final String SESSION_PREFIX = "java_session_";
+    private static final String STAGING_PREFIX = "java_staging_";
+    private static final String TRASH_PREFIX = ".trash-";
+    // Everything a wrapper names after its pid, child JVM sockets included.
+    private static final Pattern OWNED_NAME = Pattern.compile(
+            "(?:java_session_|java_staging_|\\.trash-|warm_|standby_)(\\d+)[_-].*");
+    private static final long PID = ProcessHandle.current().pid();
+    private static final long IDLE_WAIT_SECONDS = 5;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final Deque<Path> SPARES = new ConcurrentLinkedDeque<>();
+    private static final AtomicBoolean MEASURE_PENDING = new AtomicBoolean();
+    private static final AtomicLong USED_BYTES = new AtomicLong();
+    private static final ExecutorService JANITOR =
+            Executors.newSingleThreadExecutor(poolThreads("workspace-janitor"));
+    private static volatile Path root = DEFAULT_ROOT;
+    private static volatile long maxBytes;
+    private static volatile int spareCount;
+
+    /** Picks and creates the root, then reaps orphans and measures it in the background. */
+    static Path init() throws IOException {
+        root = resolveRoot();
+        long budget = intFromEnv("JAVA_WORKSPACE_MAX_MB", 192) * 1024L * 1024L;
+        long capacity = Files.getFileStore(root).getTotalSpace();
+        // A smaller tmpfs than expected, such as a default /dev/shm, lowers the budget with it.
+        maxBytes = capacity > 0 ? Math.min(budget, capacity * 3 / 4) : budget;
+        JANITOR.submit(Workspace::reapOrphans);
+        measureLater();
+        return root;
+    }
+
+    /** The root picked by {@link #init}, or /workspace before that. */
+    static Path root() {
+        return root;
+    }
+
+    /**
+     * JAVA_WORKSPACE when set. Otherwise /workspace, unless it is on disk while
+     * JAVA_WORKSPACE_TMPFS (default /dev/shm, "off" to disable) is a writable tmpfs.
+     */
+    private static Path resolveRoot() throws IOException {
+        String configured = System.getenv("JAVA_WORKSPACE");
+        if (configured != null && !configured.isBlank()) {
+            return Files.createDirectories(Paths.get(configured));
+        }
+        Path fallback = Files.createDirectories(DEFAULT_ROOT);
+        if (isTmpfs(fallback)) {
+            return fallback;
+        }
+        String tmpfs = stringFromEnv("JAVA_WORKSPACE_TMPFS", "/dev/shm");
+        if (!"off".equalsIgnoreCase(tmpfs)) {
+            Path candidate = Paths.get(tmpfs);
+            if (Files.isDirectory(candidate) && Files.isWritable(candidate) && isTmpfs(candidate)) {
+                try {
+                    return Files.createDirectories(candidate.resolve("codeguard-java"));
+                } catch (IOException e) {
+                    serverLog("tmpfs workspace unavailable, using " + fallback + ": " + e.getMessage());
+                }
+            }
+        }
+        return fallback;
+    }
+
+    private static boolean isTmpfs(Path path) {
+        try {
+            return "tmpfs".equals(Files.getFileStore(path).type());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static Path newSessionDir() throws IOException {
+        Path spare = SPARES.poll();
+        if (spare != null) {
+            JANITOR.submit(Workspace::provision);
+            return spare;
+        }
+        return create(SESSION_PREFIX);
+    }
+
+    static Path newStagingDir() throws IOException {
+        return create(STAGING_PREFIX);
+    }
+
+    /** Keeps {@code count} session directories ready for sessions that have not started yet. */
+    static void keepSpares(int count) {
+        spareCount = count;
+        JANITOR.submit(Workspace::provision);
+    }
+
+    /** Renames a finished session or staging directory aside and deletes it in the background. */
+    static void release(Path dir) {
+        Path trash = root.resolve(TRASH_PREFIX + PID + "-" + COUNTER.incrementAndGet());
+        try {
+            Files.move(dir, trash, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            trash = dir;
+        }
+        deleteLater(trash);
+    }
+
+    /** Moves {@code paths} into one trash directory, which is then deleted in the background. */
+    static void discard(List<Path> paths) {
+        Path trash;
+        try {
+            trash = Files.createDirectory(root.resolve(TRASH_PREFIX + PID + "-" + COUNTER.incrementAndGet()));
+        } catch (IOException e) {
+            paths.forEach(Workspace::deleteTree);
+            return;
+        }
+        int index = 0;
+        for (Path path : paths) {
+            try {
+                Files.move(path, trash.resolve(Integer.toString(index++)), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                deleteTree(path);
+            }
+        }
+        deleteLater(trash);
+    }
+
+    /**
+     * Null when a new batch may start, otherwise why not. Over budget, the batch first waits for
+     * pending deletions and a fresh measurement, since the last one may predate them.
+     */
+    static String admit() {
+        if (USED_BYTES.get() <= maxBytes) {
+            return null;
+        }
+        awaitIdle();
+        long used = measure();
+        if (used <= maxBytes) {
+            return null;
+        }
+        serverLog("workspace full used_kb=" + used / 1024 + " max_kb=" + maxBytes / 1024);
+        return String.format("Workspace is full (%.1f of %.1f MB used). Delete files your program creates,"
+                + " or try again shortly.", used / 1048576.0, maxBytes / 1048576.0);
+    }
+
+    /** Schedules a measurement of the tree unless one is already pending. */
+    static void measureLater() {
+        if (MEASURE_PENDING.compareAndSet(false, true)) {
+            JANITOR.submit(() -> {
+                MEASURE_PENDING.set(false);
+                measure();
+            });
+        }
+    }
+
+    /** Waits, up to a few seconds, for the janitor to finish what was submitted so far. */
+    static void awaitIdle() {
+        try {
+            JANITOR.submit(() -> { }).get(IDLE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Whatever is left is reaped by the next wrapper to start.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Path create(String prefix) throws IOException {
+        return Files.createDirectory(root.resolve(prefix + PID + "_" + COUNTER.incrementAndGet()));
+    }
+
+    private static void provision() {
+        while (SPARES.size() < spareCount) {
+            try {
+                SPARES.add(create(SESSION_PREFIX));
+            } catch (IOException e) {
+                serverLog("Failed to pre-create a session directory: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private static void deleteLater(Path path) {
+        JANITOR.submit(() -> {
+            deleteTree(path);
+            measureLater();
+        });
+    }
+
+    private static void reapOrphans() {
+        int reaped = 0;
+        try (Stream<Path> stream = Files.list(root)) {
+            for (Path path : stream.collect(Collectors.toList())) {
+                Matcher matcher = OWNED_NAME.matcher(path.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                long pid = Long.parseLong(matcher.group(1));
+                if (pid == PID || ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    continue;
+                }
+                deleteTree(path);
+                reaped++;
+            }
+        } catch (IOException | UncheckedIOException | NumberFormatException e) {
+            serverLog("workspace reap failed: " + e.getMessage());
+        }
+        if (reaped > 0) {
+            serverLog("reaped " + reaped + " workspace entries of exited wrappers");
+        }
+    }
+
+    private static long measure() {
+        AtomicLong used = new AtomicLong();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    used.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // Deleted by another session while walking.
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            return USED_BYTES.get();
+        }
+        USED_BYTES.set(used.get());
+        return used.get();
+    }
+
+    // Never follows a symbolic link a program left in its directory.
+    private static void deleteTree(Path path) {
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // Left for the next reap.
+        }
+    }
+}
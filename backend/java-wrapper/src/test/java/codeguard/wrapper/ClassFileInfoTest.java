@@ -0,0 +1,59 @@
+package codeguard.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClassFileInfoTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsNameReferencesAndConstants() throws IOException {
+        Javac.compile(dir, Map.of(
+                "shop/Cart.java", "package shop;\n"
+                        + "public class Cart {\n"
+                        + "    static final int LIMIT = 5;\n"
+                        + "    static final String NAME = \"cart\";\n"
+                        + "    Item first;\n"
+                        + "    java.util.List<Price> prices(Discount d) { return null; }\n"
+                        + "}\n",
+                "shop/Item.java", "package shop; class Item {}\n",
+                "shop/Price.java", "package shop; class Price {}\n",
+                "shop/Discount.java", "package shop; class Discount {}\n"));
+
+        ClassFileInfo info = ClassFileInfo.read(Files.readAllBytes(dir.resolve("shop/Cart.class")));
+
+        assertEquals("shop/Cart", info.name);
+        // Stray matches such as "IMIT" from the field name LIMIT are allowed; they only cost a recompile.
+        assertTrue(info.references.containsAll(Set.of("shop/Item", "shop/Price", "shop/Discount")));
+        assertTrue(info.references.stream().noneMatch(name -> name.startsWith("java/") || name.equals("shop/Cart")));
+        assertEquals(List.of("LIMIT:I=5", "NAME:Ljava/lang/String;=cart"), info.constants);
+    }
+
+    @Test
+    void rejectsOtherFiles() {
+        assertThrows(IOException.class, () -> ClassFileInfo.read(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    void countsReferencesFromNestedClasses() throws IOException {
+        Javac.compile(dir, Map.of(
+                "Outer.java", "class Outer { class Inner { Other other; } }\n",
+                "Other.java", "class Other {}\n"));
+
+        ClassFileInfo inner = ClassFileInfo.read(Files.readAllBytes(dir.resolve("Outer$Inner.class")));
+
+        assertEquals("Outer$Inner", inner.name);
+        assertTrue(inner.references.containsAll(Set.of("Outer", "Other")));
+    }
+}
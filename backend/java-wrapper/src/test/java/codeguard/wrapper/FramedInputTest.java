@@ -0,0 +1,117 @@
+package codeguard.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FramedInputTest {
+    @TempDir
+    Path staging;
+
+    @Test
+    void readsTheHandshakeLineAndHandsBackTheRest() throws IOException {
+        FramedInput input = input("__PROTOCOL__ framed\n__FILE_START__ Main.java\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("__PROTOCOL__ framed\n", new String(input.readLine(), StandardCharsets.UTF_8));
+        assertEquals("__FILE_START__ Main.java\n", new String(input.remainder().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void acceptsANonceAfterTheHandshake() {
+        Matcher nonce = FramedInput.HANDSHAKE_NONCE.matcher("__PROTOCOL__ framed 0123abcd");
+
+        assertTrue(nonce.matches());
+        assertEquals("0123abcd", nonce.group(1));
+        assertFalse(FramedInput.HANDSHAKE_NONCE.matcher("__PROTOCOL__ framed a b").matches());
+    }
+
+    @Test
+    void stagesFilesAndQueuesBatchFramesInOrder() throws Exception {
+        String source = "public class Main {\n__RUN_CODE__\n}\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        frame(bytes, 'F', source, "pkg/Main.java");
+        frame(bytes, 'I', "typed ahead\n", null);
+        frame(bytes, 'R', "", null);
+        frame(bytes, 'C', "", null);
+        frame(bytes, 'T', "1\t0\t2000\t\t\n", "1");
+
+        BlockingQueue<FramedInput.Frame> frames = input(bytes.toByteArray()).startReader(staging, new RunControl());
+
+        FramedInput.Frame file = next(frames);
+        assertEquals(FramedInput.FILE, file.type);
+        assertEquals("pkg/Main.java", file.argument);
+        assertEquals(source, Files.readString(file.dir.resolve("pkg/Main.java")));
+        FramedInput.Frame run = next(frames);
+        assertEquals(FramedInput.RUN, run.type);
+        assertEquals(file.dir, run.dir);
+        FramedInput.Frame tests = next(frames);
+        assertEquals(FramedInput.TESTS, tests.type);
+        assertEquals("1", tests.argument);
+        assertNull(tests.dir);
+        assertArrayEquals("1\t0\t2000\t\t\n".getBytes(StandardCharsets.UTF_8), tests.payload);
+        assertEquals(FramedInput.EOF, next(frames).type);
+        assertNull(frames.poll());
+    }
+
+    @Test
+    void stagesEachBatchInItsOwnDirectory() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        frame(bytes, 'F', "class Main { int first; }", "Main.java");
+        frame(bytes, 'R', "", null);
+        frame(bytes, 'F', "class Main { int second; }", "Main.java");
+        frame(bytes, 'R', "", null);
+
+        BlockingQueue<FramedInput.Frame> frames = input(bytes.toByteArray()).startReader(staging, new RunControl());
+
+        next(frames);
+        FramedInput.Frame first = next(frames);
+        next(frames);
+        FramedInput.Frame second = next(frames);
+        assertNotEquals(first.dir, second.dir);
+        assertEquals("class Main { int first; }", Files.readString(first.dir.resolve("Main.java")));
+        assertEquals("class Main { int second; }", Files.readString(second.dir.resolve("Main.java")));
+    }
+
+    @Test
+    void endsTheQueueOnAMalformedHeader() throws Exception {
+        BlockingQueue<FramedInput.Frame> frames = input("R nope\n".getBytes(StandardCharsets.UTF_8))
+                .startReader(staging, new RunControl());
+
+        assertEquals(FramedInput.EOF, next(frames).type);
+    }
+
+    private static FramedInput input(byte[] bytes) {
+        return new FramedInput(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    private static void frame(ByteArrayOutputStream out, char type, String payload, String argument) {
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        String header = type + " " + body.length + (argument == null ? "" : " " + argument) + "\n";
+        out.writeBytes(header.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(body);
+    }
+
+    private static FramedInput.Frame next(BlockingQueue<FramedInput.Frame> frames) throws InterruptedException {
+        FramedInput.Frame frame = frames.poll(5, TimeUnit.SECONDS);
+        if (frame == null) {
+            throw new AssertionError("no frame within 5s");
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,115 @@
+package codeguard.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IncrementalBuildTest {
+    @TempDir
+    Path dir;
+
+    private final IncrementalBuild build = new IncrementalBuild();
+    private final Map<String, String> sources = new TreeMap<>();
+
+    @BeforeEach
+    void compileFirstBatch() throws IOException {
+        sources.put("A.java", "class A { B b; public static void main(String[] args) {} }");
+        sources.put("B.java", "class B { static final int N = 1; int v() { return 1; } }");
+        sources.put("C.java", "class C {}");
+
+        IncrementalBuild.Plan plan = batch(sources);
+        assertTrue(plan.full);
+        assertEquals(sources.keySet(), plan.sources.keySet());
+    }
+
+    @Test
+    void unchangedBatchCompilesNothing() throws IOException {
+        IncrementalBuild.Plan plan = build.plan(dir, sources);
+
+        assertFalse(plan.full);
+        assertTrue(plan.sources.isEmpty());
+    }
+
+    @Test
+    void recompilesChangedFilesAndTheirDependents() throws IOException {
+        sources.put("B.java", "class B { static final int N = 1; int v() { return 2; } }");
+
+        IncrementalBuild.Plan plan = batch(sources);
+
+        assertFalse(plan.full);
+        assertEquals(Set.of("A.java", "B.java"), plan.sources.keySet());
+        assertEquals(1, plan.changed);
+        assertTrue(build.isCompiled(dir, dir.resolve("C.class")));
+    }
+
+    @Test
+    void changedConstantNeedsAFullRebuild() throws IOException {
+        sources.put("B.java", "class B { static final int N = 2; int v() { return 1; } }");
+        IncrementalBuild.Plan plan = build.plan(dir, sources);
+        Javac.compile(dir, plan.sources);
+
+        assertEquals("constants changed in B.java", build.record(dir, plan, sources));
+    }
+
+    @Test
+    void replacedClassFileNeedsAFullRebuild() throws IOException {
+        Files.write(dir.resolve("C.class"), new byte[] {0});
+        sources.put("B.java", "class B { static final int N = 1; int v() { return 2; } }");
+
+        assertFalse(build.isCompiled(dir, dir.resolve("C.class")));
+        assertNull(build.compiledClasses(dir));
+        assertTrue(build.plan(dir, sources).full);
+    }
+
+    @Test
+    void removedFileDeletesItsSourceAndRebuilds() throws IOException {
+        sources.remove("C.java");
+
+        IncrementalBuild.Plan plan = build.plan(dir, sources);
+
+        assertTrue(plan.full);
+        assertFalse(Files.exists(dir.resolve("C.java")));
+        assertFalse(Files.exists(dir.resolve("C.class")));
+    }
+
+    @Test
+    void failedCompileIsRetriedNextBatch() throws IOException {
+        sources.put("C.java", "class C { broken }");
+        IncrementalBuild.Plan failed = build.plan(dir, sources);
+        build.recordFailure(dir, failed);
+        sources.put("C.java", "class C {}");
+
+        IncrementalBuild.Plan plan = build.plan(dir, sources);
+
+        assertFalse(plan.full);
+        assertEquals(Set.of("C.java"), plan.sources.keySet());
+    }
+
+    @Test
+    void compiledClassesHoldWhatTheCompilerWrote() throws IOException {
+        Map<String, byte[]> classes = build.compiledClasses(dir);
+
+        assertNotNull(classes);
+        assertEquals(Set.of("A.class", "B.class", "C.class"), classes.keySet());
+    }
+
+    private IncrementalBuild.Plan batch(Map<String, String> batch) throws IOException {
+        Javac.write(dir, batch);
+        IncrementalBuild.Plan plan = build.plan(dir, batch);
+        Javac.compile(dir, plan.sources);
+        assertNull(build.record(dir, plan, batch));
+        return plan;
+    }
+}
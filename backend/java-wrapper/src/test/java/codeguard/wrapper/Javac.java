@@ -0,0 +1,36 @@
+package codeguard.wrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.tools.ToolProvider;
+
+/** Writes sources into a session-like directory and compiles them there with the system compiler. */
+final class Javac {
+    private Javac() {
+    }
+
+    static void write(Path dir, Map<String, String> sources) throws IOException {
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            Path file = dir.resolve(source.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, source.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Writes and compiles {@code sources}; classes already in {@code dir} are on the class path. */
+    static void compile(Path dir, Map<String, String> sources) throws IOException {
+        write(dir, sources);
+        List<String> args = new ArrayList<>(List.of("-g:none", "-cp", dir.toString(), "-d", dir.toString()));
+        sources.keySet().forEach(path -> args.add(dir.resolve(path).toString()));
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        if (ToolProvider.getSystemJavaCompiler().run(null, null, errors, args.toArray(new String[0])) != 0) {
+            throw new IOException("javac failed: " + errors.toString(StandardCharsets.UTF_8));
+        }
+    }
+}
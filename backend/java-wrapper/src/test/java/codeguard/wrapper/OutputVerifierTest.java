@@ -0,0 +1,89 @@
+package codeguard.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class OutputVerifierTest {
+    @Test
+    void ignoresTrailingWhitespaceAndBlankLines() {
+        OutputVerifier verifier = verify("1\n2\n", "1  \r\n2\t\n\n\n");
+
+        assertEquals(Boolean.TRUE, verifier.matches());
+        assertEquals("1  \r\n2\t\n\n\n", text(verifier));
+    }
+
+    @Test
+    void acceptsAnUnterminatedLastLine() {
+        assertEquals(Boolean.TRUE, verify("a\nb", "a\nb").matches());
+    }
+
+    @Test
+    void stopsAtTheFirstWrongByte() {
+        OutputVerifier verifier = new OutputVerifier("yes\n");
+        verifier.write("yep".getBytes(StandardCharsets.UTF_8), 0, 3);
+
+        assertTrue(verifier.mismatched());
+        assertEquals(Boolean.FALSE, verifier.matches());
+    }
+
+    @Test
+    void missingLinesAreAMismatchOnceTheProgramEnds() {
+        OutputVerifier verifier = verify("1\n2\n3\n", "1\n2\n");
+
+        assertFalse(verifier.matches());
+    }
+
+    @Test
+    void extraOutputIsAMismatch() {
+        assertFalse(verify("1\n", "1\n2\n").matches());
+    }
+
+    @Test
+    void keepsOnlyAWindowAroundAWrongAnswer() {
+        StringBuilder output = new StringBuilder();
+        for (int i = 1; i <= 5000; i++) {
+            output.append(i == 4000 ? "wrong" : String.valueOf(i)).append('\n');
+        }
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 5000; i++) {
+            expected.append(i).append('\n');
+        }
+
+        OutputVerifier verifier = verify(expected.toString(), output.toString());
+        String kept = text(verifier);
+
+        assertFalse(verifier.matches());
+        assertTrue(kept.startsWith("[... "), kept.substring(0, 40));
+        assertTrue(kept.contains("wrong\n"));
+        assertTrue(kept.endsWith("first difference from the expected output on line 4000, "
+                + (output.length() - output.indexOf("wrong") - 1024) + " more bytes omitted ...]"));
+    }
+
+    @Test
+    void onlyCapturesWithoutAnExpectedOutput() {
+        OutputVerifier verifier = verify(null, "anything\n");
+
+        assertNull(verifier.matches());
+        assertEquals("anything\n", text(verifier));
+    }
+
+    private static OutputVerifier verify(String expected, String output) {
+        OutputVerifier verifier = new OutputVerifier(expected);
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        // Chunked like a pipe would deliver it.
+        for (int off = 0; off < bytes.length; off += 7) {
+            verifier.write(bytes, off, Math.min(7, bytes.length - off));
+        }
+        verifier.finish();
+        return verifier;
+    }
+
+    private static String text(OutputVerifier verifier) {
+        return new String(verifier.output(), StandardCharsets.UTF_8);
+    }
+}
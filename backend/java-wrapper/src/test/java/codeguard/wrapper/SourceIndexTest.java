@@ -0,0 +1,77 @@
+package codeguard.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SourceIndexTest {
+    @Test
+    void findsMainClassAndQualifiesItWithThePackage() {
+        SourceIndex.Entry entry = SourceIndex.index(
+                "package a.b;\n"
+                + "import java.util.*;\n"
+                + "class Helper { void main(String[] args) {} }\n"
+                + "public class Main {\n"
+                + "    public static void main(String[] args) {}\n"
+                + "}\n");
+
+        assertEquals("a.b", entry.packageName);
+        assertEquals(List.of("Helper", "Main"), entry.types);
+        assertEquals(List.of("Main"), entry.mainClasses);
+        assertEquals("a.b.Main", entry.mainClass());
+        assertNull(entry.appletClass());
+    }
+
+    @Test
+    void ignoresDeclarationsInCommentsAndLiterals() {
+        SourceIndex.Entry entry = SourceIndex.index(
+                "// public class Fake { public static void main(String[] a) {} }\n"
+                + "/* class Other { public static void main(String[] a) {} } */\n"
+                + "class Real {\n"
+                + "    static String s = \"class InString { public static void main(String[] a) {} }\";\n"
+                + "    static String t = \"\"\"\n"
+                + "        class InBlock {}\n"
+                + "        \"\"\";\n"
+                + "    public static void main(String... args) {}\n"
+                + "}\n");
+
+        assertEquals(List.of("Real"), entry.types);
+        assertEquals("Real", entry.mainClass());
+    }
+
+    @Test
+    void prefersPublicTypesAndAcceptsEveryStringArrayForm() {
+        SourceIndex.Entry entry = SourceIndex.index(
+                "class First { public static void main(final java.lang.String args[]) {} }\n"
+                + "public class Second { public static void main(String[] args) {} }\n"
+                + "interface Third { static void main(String... args) {} }\n"
+                + "class NotMain { public static void main(int[] args) {} }\n");
+
+        assertEquals(List.of("Second", "First", "Third"), entry.mainClasses);
+    }
+
+    @Test
+    void findsAppletSubclasses() {
+        SourceIndex.Entry entry = SourceIndex.index(
+                "import javax.swing.*;\n"
+                + "public class Draw extends JApplet {}\n"
+                + "class Plain extends java.applet.Applet {}\n");
+
+        assertNull(entry.mainClass());
+        assertEquals(List.of("Draw", "Plain"), entry.appletClasses);
+        assertEquals("Draw", entry.appletClass());
+    }
+
+    @Test
+    void cachesEntriesByContent() {
+        String source = "class Cached { public static void main(String[] a) {} }";
+
+        assertSame(SourceIndex.lookup(source), SourceIndex.lookup(new String(source)));
+        assertEquals(64, SourceIndex.contentKey(source).length());
+        assertNotEquals(SourceIndex.contentKey(source), SourceIndex.contentKey(source + " "));
+    }
+}
@@ -10,6 +10,7 @@ const logger = require('./utils/logger');
 const { errorHandler, notFoundHandler } = require('./middleware/errorHandler');
 const { authMiddleware } = require('./middleware/authMiddleware');
 const executeRoute = require('./routes/execute');
+const { getRunStatsSnapshot } = require('./services/runStatsService');
 
 const app = express();
 
@@ -193,6 +194,11 @@ app.get('/health', (req, res) =>
   })
 );
 
+// Java run telemetry collected from the wrapper's __RUN_STATS__ trailers
+app.get('/health/runs', authMiddleware, (req, res) =>
+  res.json(getRunStatsSnapshot())
+);
+
 // 404 handler
 app.use(notFoundHandler);
 
@@ -61,6 +61,13 @@ const envSchema = z.object({
     .transform((val) => val === 'true')
     .default('true'),
   WRAPPER_HARNESS_LANGS: z.string().default('python,py,c,java'),
+  JAVA_WRAPPER_PROTOCOL: z.enum(['sentinel', 'framed']).default('framed'),
+  JAVA_WRAPPER_MODE: z.enum(['process', 'server']).default('process'),
+  JAVA_RUN_PROFILE: z
+    .enum(['auto', 'startup', 'throughput', 'low-memory'])
+    .default('auto'),
+  // 'on' keeps one pre-booted JVM (~35 MB RSS) idle per Java session to cut cold-run startup.
+  JAVA_STANDBY: z.enum(['on', 'off']).default('off'),
   ALLOW_LOCAL_EXECUTION: z
     .string()
     .transform((val) => val === 'true')
@@ -118,6 +125,10 @@ module.exports = {
     wrapperHarnessLangs: env.WRAPPER_HARNESS_LANGS.split(',')
       .map((lang) => lang.trim().toLowerCase())
       .filter(Boolean),
+    javaWrapperProtocol: env.JAVA_WRAPPER_PROTOCOL,
+    javaWrapperMode: env.JAVA_WRAPPER_MODE,
+    javaRunProfile: env.JAVA_RUN_PROFILE,
+    javaStandby: env.JAVA_STANDBY,
   },
   rateLimit: {
     windowMs: 15 * 60 * 1000, // 15 minutes
@@ -72,6 +72,14 @@ class BaseRunner {
     return config.docker.pidsLimit;
   }
 
+  /**
+   * Get the memory limit in KB for test cases that do not set one
+   * @returns {number}
+   */
+  get defaultMemoryLimitKb() {
+    return 65536;
+  }
+
   /**
    * Escape string for printf (Deprecated - use writeBase64FileCommand instead)
    * @param {string} s - String to escape
@@ -117,7 +125,7 @@ class BaseRunner {
       input = '',
       expectedOutput = '',
       time_limit_ms = 5000,
-      memory_limit_kb = 65536,
+      memory_limit_kb = this.defaultMemoryLimitKb,
       is_hidden = false,
     } = testCase;
 
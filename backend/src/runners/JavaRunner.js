@@ -4,6 +4,13 @@
 
 const BaseRunner = require('./BaseRunner');
 const config = require('../config');
+const {
+  selectJavaRunProfile,
+} = require('../utils/execution/javaRunProfiles');
+
+// Prebuilt launcher shipped in the codeguard-java image's wrapper jar.
+const JAVA_WRAPPER_JAR = '/app/interactive_wrapper.jar';
+const JAVA_LAUNCHER_CLASS = 'codeguard.wrapper.Launcher';
 
 class JavaRunner extends BaseRunner {
   get language() {
@@ -22,9 +29,16 @@ class JavaRunner extends BaseRunner {
     return config.docker.javaPidsLimit;
   }
 
+  // Same default as the execute route. The startup profile's MaxRAMPercentage=50
+  // gives it the 128 MB heap the runner used to pin with -Xmx128M; 64 MB would
+  // select the low-memory profile and a heap of about 25 MB.
+  get defaultMemoryLimitKb() {
+    return 262144;
+  }
+
   /**
    * Build Java execution command (compile + run)
-   * Handles class name detection and launcher generation
+   * Handles class name detection and picks the launcher mode and run profile
    * @param {string} code - Java source code
    * @param {Object} testCase - Test case data
    * @param {string} uniqueId - Unique identifier for temp files
@@ -32,7 +46,11 @@ class JavaRunner extends BaseRunner {
    * @returns {string}
    */
   buildCommand(code, testCase, uniqueId, timeoutSec) {
-    const { stdinInput = '' } = testCase;
+    const {
+      stdinInput = '',
+      time_limit_ms: timeLimitMs = 0,
+      memory_limit_kb: memoryLimitKb = this.defaultMemoryLimitKb,
+    } = testCase;
 
     // Parse class name and package from the Node side for robust extraction
     const pkgMatch = code.match(/^\s*package\s+([a-zA-Z0-9_.]+)\s*;/m);
@@ -75,99 +93,35 @@ class JavaRunner extends BaseRunner {
       }
     }
 
-    let wrapperCode = '';
+    // Main classes and applets start through the prebuilt launcher in the wrapper jar.
+    let launchMode = null;
     if (hasMain) {
-      wrapperCode = `
-  ${pkgName ? `package ${pkgName};` : ''}
-  public class __RunnerLauncher {
-    private static java.io.InputStream nonClosingStdIn() {
-      return new java.io.FilterInputStream(System.in) {
-        @Override
-        public void close() throws java.io.IOException {
-          // Keep stdin available even if user code calls Scanner.close().
-        }
-      };
-    }
-    public static void main(String[] args) {
-      try {
-        System.setIn(nonClosingStdIn());
-        java.lang.reflect.Method mainMethod =
-          Class.forName("${runClassFqcn}").getMethod("main", String[].class);
-        mainMethod.invoke(null, (Object) args);
-      } catch (Throwable t) {
-        Throwable cause = (t instanceof java.lang.reflect.InvocationTargetException && t.getCause() != null)
-          ? t.getCause()
-          : t;
-        if (cause instanceof java.awt.HeadlessException) {
-          System.out.println("GUI execution skipped in headless environment.");
-          return;
-        }
-        cause.printStackTrace();
-        System.exit(1);
-      }
-    }
-  }
-      `.trim();
-      runClassFqcn = pkgName
-        ? `${pkgName}.__RunnerLauncher`
-        : '__RunnerLauncher';
+      launchMode = 'main';
     } else if (appletClassMatch?.[1]) {
-      const appletClassName = appletClassMatch[1];
-      const appletFqcn = pkgName
-        ? `${pkgName}.${appletClassName}`
-        : appletClassName;
-
-      wrapperCode = `
-${pkgName ? `package ${pkgName};` : ''}
-    public class __RunnerLauncher {
-    public static void main(String[] args) {
-        System.setProperty("java.awt.headless", "true");
-        try {
-            Object instance = Class.forName("${appletFqcn}").getDeclaredConstructor().newInstance();
-            if (instance instanceof java.applet.Applet) {
-                java.applet.Applet applet = (java.applet.Applet) instance;
-                applet.init();
-                applet.start();
-                java.awt.image.BufferedImage canvas = new java.awt.image.BufferedImage(
-                    1,
-                    1,
-                    java.awt.image.BufferedImage.TYPE_INT_ARGB
-                );
-                java.awt.Graphics2D g = canvas.createGraphics();
-                applet.paint(g);
-                g.dispose();
-            }
-            System.out.println("Applet executed in headless mode.");
-        } catch (Throwable t) {
-            Throwable cause = (t instanceof java.lang.reflect.InvocationTargetException && t.getCause() != null)
-              ? t.getCause()
-              : t;
-            if (cause instanceof java.awt.HeadlessException) {
-              System.out.println("Applet compiled successfully (headless runtime skipped).");
-              return;
-            }
-            t.printStackTrace();
-            System.exit(1);
-        }
-    }
-}
-      `.trim();
+      launchMode = 'applet';
       runClassFqcn = pkgName
-        ? `${pkgName}.__RunnerLauncher`
-        : '__RunnerLauncher';
+        ? `${pkgName}.${appletClassMatch[1]}`
+        : appletClassMatch[1];
     }
+    const runTarget = launchMode
+      ? `-cp ${JAVA_WRAPPER_JAR}:/tmp/${uniqueId} ${JAVA_LAUNCHER_CLASS} ${launchMode} ${runClassFqcn}`
+      : `-cp /tmp/${uniqueId} ${runClassFqcn}`;
+    // Same container memory limit as BaseRunner.runTestCase passes to docker run.
+    const profile = selectJavaRunProfile({
+      timeLimitMs,
+      memoryLimit: `${memoryLimitKb}k`,
+    });
 
     return `
 mkdir -p /tmp/${uniqueId} &&
 ${this.writeBase64FileCommand(code, `/tmp/${uniqueId}/${compileClassName}.java`)} &&
-${wrapperCode ? this.writeBase64FileCommand(wrapperCode, `/tmp/${uniqueId}/__RunnerLauncher.java`) + ' &&' : ''}
 ${this.writeBase64FileCommand(stdinInput, `/tmp/${uniqueId}/input.txt`)} &&
 javac -d /tmp/${uniqueId} /tmp/${uniqueId}/*.java 2> /tmp/${uniqueId}/compile_err.txt || true &&
 if [ -s /tmp/${uniqueId}/compile_err.txt ]; then
   cat /tmp/${uniqueId}/compile_err.txt 1>&2
   exit 1
 else
-  cat /tmp/${uniqueId}/input.txt | timeout ${timeoutSec} java -XX:+UseSerialGC -Xmx128M -cp /tmp/${uniqueId} ${runClassFqcn}
+  cat /tmp/${uniqueId}/input.txt | timeout ${timeoutSec} java ${profile.flags} ${runTarget}
 fi
     `.trim();
   }
@@ -102,6 +102,8 @@ const launchContainer = (lang, containerName) => {
       '/workspace:exec,rw,size=256m,uid=1000,gid=1000,mode=1777',
       '-e',
       `EXECUTION_TIMEOUT=${config.executionTimeout}`,
+      '-e',
+      `JAVA_STANDBY=${config.execution.javaStandby}`,
       'codeguard-java',
       'tail',
       '-f',
@@ -153,24 +155,36 @@ const execPython = (containerName, onData, onExit) => {
   return pythonProcess;
 };
 
-const execJava = (containerName, onData, onExit) => {
+const execJava = (
+  containerName,
+  onData,
+  onExit,
+  { trailerNonce = null, onStderr = onData } = {}
+) => {
+  // In server mode every session attaches to one long-lived wrapper JVM per
+  // container (see docker/java/java_session.sh) instead of starting its own.
+  const command =
+    config.execution.javaWrapperMode === 'server'
+      ? ['/app/java_session.sh']
+      : [
+          'java',
+          // Built by docker/java/build_cds.sh; the JVM ignores it if missing or stale.
+          '-XX:SharedArchiveFile=/app/cds/wrapper.jsa',
+          '-Xshare:auto',
+          '-jar',
+          '/app/interactive_wrapper.jar',
+        ];
+  // Tags the wrapper's trailer lines; the shared server gets the nonce with the
+  // framed handshake instead.
+  const env = trailerNonce ? ['-e', `JAVA_TRAILER_NONCE=${trailerNonce}`] : [];
   const javaProcess = spawn(
     'docker',
-    [
-      'exec',
-      '-i',
-      '-u',
-      'runner',
-      containerName,
-      'java',
-      '-jar',
-      '/app/interactive_wrapper.jar',
-    ],
+    ['exec', '-i', '-u', 'runner', ...env, containerName, ...command],
     { stdio: ['pipe', 'pipe', 'pipe'] }
   );
 
   javaProcess.stdout.on('data', onData);
-  javaProcess.stderr.on('data', onData);
+  javaProcess.stderr.on('data', onStderr);
 
   if (onExit) {
     javaProcess.on('exit', onExit);
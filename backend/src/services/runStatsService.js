@@ -0,0 +1,134 @@
+/**
+ * Run telemetry from the Java wrapper.
+ *
+ * InteractiveWrapper prints one `__RUN_STATS__:<nonce> key=value ...` line
+ * after every run (see RunStats in the java-wrapper module). The socket service
+ * strips that line from the terminal output and hands it here, where it is
+ * logged and folded into in-memory latency histograms per run mode.
+ */
+
+const logger = require('../utils/logger');
+
+const RUN_STATS_PREFIX = '__RUN_STATS__';
+// Histogram bucket upper bounds in ms; one extra bucket catches slower runs.
+const BUCKET_BOUNDS_MS = [100, 250, 500, 1000, 2000, 5000, 10000, 30000];
+const HISTOGRAM_FIELDS = [
+  'resolve_ms',
+  'compile_ms',
+  'compile_cpu_ms',
+  'run_ms',
+  'run_cpu_ms',
+  'total_ms',
+];
+// Oldest modes are dropped beyond this many.
+const MAX_ENTRIES = 500;
+
+const entries = new Map();
+
+const parseRunStats = (line) => {
+  const start = line.indexOf(RUN_STATS_PREFIX);
+  if (start === -1) return null;
+
+  const stats = {};
+  line
+    .slice(start + RUN_STATS_PREFIX.length)
+    // The session nonce tagging the line, if any.
+    .replace(/^:\S*/, '')
+    .trim()
+    .split(/\s+/)
+    .forEach((pair) => {
+      const eq = pair.indexOf('=');
+      if (eq <= 0) return;
+      const value = pair.slice(eq + 1);
+      stats[pair.slice(0, eq)] = /^-?\d+$/.test(value) ? Number(value) : value;
+    });
+  return stats;
+};
+
+const createHistogram = () => ({
+  count: 0,
+  sum: 0,
+  max: 0,
+  buckets: new Array(BUCKET_BOUNDS_MS.length + 1).fill(0),
+});
+
+const observe = (histogram, value) => {
+  const bucket = BUCKET_BOUNDS_MS.findIndex((bound) => value <= bound);
+  histogram.buckets[bucket === -1 ? BUCKET_BOUNDS_MS.length : bucket] += 1;
+  histogram.count += 1;
+  histogram.sum += value;
+  histogram.max = Math.max(histogram.max, value);
+};
+
+const getEntry = (mode) => {
+  let entry = entries.get(mode);
+  if (!entry) {
+    if (entries.size >= MAX_ENTRIES) {
+      entries.delete(entries.keys().next().value);
+    }
+    entry = {
+      mode,
+      runs: 0,
+      compileErrors: 0,
+      timeouts: 0,
+      cpuLimits: 0,
+      // Runs the student stopped or replaced with a new one.
+      cancellations: 0,
+      nonZeroExits: 0,
+      maxPeakRssKb: 0,
+      // Runs per JVM run profile (startup, throughput, low-memory).
+      profiles: {},
+      histograms: Object.fromEntries(
+        HISTOGRAM_FIELDS.map((field) => [field, createHistogram()])
+      ),
+    };
+    entries.set(mode, entry);
+  }
+  return entry;
+};
+
+/**
+ * Parses and records one trailer line.
+ * @param {string} line - Output line containing `__RUN_STATS__`
+ * @param {Object} context - `label` for the log line
+ * @returns {Object|null} Parsed stats
+ */
+const recordRunStats = (line, { label = 'Java' } = {}) => {
+  const stats = parseRunStats(line);
+  if (!stats) return null;
+
+  logger.info(`[${label}] run stats`, stats);
+
+  const entry = getEntry(stats.mode || 'none');
+  entry.runs += 1;
+  if (stats.compiled === 0) entry.compileErrors += 1;
+  if (stats.timed_out === 1) entry.timeouts += 1;
+  if (stats.cpu_limit === 1) entry.cpuLimits += 1;
+  if (stats.cancelled === 1) {
+    entry.cancellations += 1;
+  } else if (stats.exit > 0) {
+    entry.nonZeroExits += 1;
+  }
+  entry.maxPeakRssKb = Math.max(entry.maxPeakRssKb, stats.peak_rss_kb || 0);
+  if (stats.profile && stats.profile !== 'none') {
+    entry.profiles[stats.profile] = (entry.profiles[stats.profile] || 0) + 1;
+  }
+  HISTOGRAM_FIELDS.forEach((field) => {
+    if (typeof stats[field] === 'number') {
+      observe(entry.histograms[field], stats[field]);
+    }
+  });
+  return stats;
+};
+
+const getRunStatsSnapshot = () => ({
+  bucketBoundsMs: BUCKET_BOUNDS_MS,
+  entries: [...entries.values()],
+});
+
+module.exports = {
+  RUN_STATS_PREFIX,
+  parseRunStats,
+  recordRunStats,
+  getRunStatsSnapshot,
+};
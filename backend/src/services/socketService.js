@@ -1,7 +1,10 @@
+const crypto = require('crypto');
+const { StringDecoder } = require('string_decoder');
 const { v4: uuidv4 } = require('uuid');
 const dockerService = require('./dockerService');
 const localService = require('./localService');
 const poolManager = require('./poolManager');
+const { RUN_STATS_PREFIX, recordRunStats } = require('./runStatsService');
 const config = require('../config');
 const logger = require('../utils/logger');
 const { isLocalAvailable } = require('../utils/runtimeDetector');
@@ -118,6 +121,95 @@ const safeSend = (socket, data) => {
   }
 };
 
+const SERVER_LOG_PREFIX = '__SERVER_LOG__';
+
+// Wrappers print `__SERVER_LOG__ <msg>` lines for the backend log; the rest of
+// their output goes to the client unchanged. Given a nonce, only whole lines
+// tagged with it (`__SERVER_LOG__:<nonce> <msg>`, `__RUN_STATS__:<nonce> ...`)
+// are taken, so a program printing a prefix cannot forge one. Lines are
+// reassembled across chunks; a trailing partial line is only held back while
+// it could still become one of those lines. `handshake`, if given, is
+// `{ line, isPending, accept }`: while isPending() returns true, a whole line
+// equal to `line` is dropped and accept() is called.
+const createOutputForwarder = (
+  socket,
+  label,
+  nonce = null,
+  { handshake = null } = {}
+) => {
+  const logTag = nonce
+    ? `${SERVER_LOG_PREFIX}:${nonce} `
+    : `${SERVER_LOG_PREFIX} `;
+  const statsTag = nonce ? `${RUN_STATS_PREFIX}:${nonce} ` : null;
+  const tags = statsTag ? [logTag, statsTag] : [logTag];
+  const decoder = new StringDecoder('utf8');
+  let pending = '';
+  // Whether the next character starts a line, as far as the client has seen.
+  let atLineStart = true;
+
+  const awaitingHandshake = () => handshake !== null && handshake.isPending();
+
+  const mayBecomeTag = (text) =>
+    tags.some((tag) => tag.startsWith(text) || text.startsWith(tag)) ||
+    (awaitingHandshake() && handshake.line.startsWith(text));
+
+  return (data) => {
+    const text = pending + decoder.write(data);
+    pending = '';
+    let forward = '';
+    let start = 0;
+    while (start < text.length) {
+      const end = text.indexOf('\n', start);
+      if (end === -1) {
+        const rest = text.slice(start);
+        if (atLineStart && mayBecomeTag(rest)) {
+          pending = rest;
+        } else {
+          forward += rest;
+          atLineStart = false;
+        }
+        break;
+      }
+
+      const line = text.slice(start, end);
+      if (
+        atLineStart &&
+        awaitingHandshake() &&
+        line.replace(/\r$/, '') === handshake.line
+      ) {
+        handshake.accept();
+      } else if (atLineStart && line.startsWith(logTag)) {
+        logger.info(`[${label}] ${line.slice(logTag.length).trim()}`);
+      } else if (atLineStart && statsTag && line.startsWith(statsTag)) {
+        recordRunStats(line, { label });
+      } else {
+        forward += text.slice(start, end + 1);
+      }
+      atLineStart = true;
+      start = end + 1;
+    }
+    if (forward) {
+      safeSend(socket, forward);
+    }
+  };
+};
+
+// Sent as the first line to the Java wrapper; echoed back when it switches to
+// length-prefixed frames (see FramedInput in the java-wrapper module).
+// The request also carries the session's trailer nonce. Once sent, the wrapper
+// is committed to frames, so a session without a reply is failed, not
+// downgraded to sentinels.
+const JAVA_PROTOCOL_HANDSHAKE = '__PROTOCOL__ framed';
+const JAVA_HANDSHAKE_TIMEOUT_MS = 30000;
+
+const encodeJavaFrame = (type, payload = '', arg = '') => {
+  const body = Buffer.from(payload, 'utf-8');
+  const header = arg
+    ? `${type} ${body.length} ${arg}\n`
+    : `${type} ${body.length}\n`;
+  return Buffer.concat([Buffer.from(header, 'utf-8'), body]);
+};
+
 const cleanupAll = () => {
   logger.info('Cleaning up all active sessions...');
   for (const [sessionId, session] of activeSessions.entries()) {
@@ -194,10 +286,111 @@ const handleConnection = async (ws, req) => {
   let cppProcess = null;
   let pythonProcess = null;
   let javaProcess = null;
+  // Tags the Java wrapper's trailer lines; new for every wrapper process.
+  let javaTrailerNonce = null;
   let lang = 'python';
   let suppressNextOutput = false;
   let fileBuffer = []; // Buffer to collect multiple files
   let pooledContainer = null;
+  // 'sentinel' (line protocol), 'pending' (handshake sent) or 'framed'
+  let javaProtocol = 'sentinel';
+  let javaPendingMessages = [];
+  let javaHandshakeTimer = null;
+
+  const resetJavaProtocol = () => {
+    clearTimeout(javaHandshakeTimer);
+    javaHandshakeTimer = null;
+    javaProtocol = 'sentinel';
+    javaPendingMessages = [];
+  };
+
+  const writeToJava = (message) => {
+    if (!javaProcess) return;
+    if (javaProtocol === 'pending') {
+      javaPendingMessages.push(message);
+      return;
+    }
+
+    if (javaProtocol === 'framed') {
+      if (message.type === 'cancel') {
+        javaProcess.stdin.write(encodeJavaFrame('C'));
+      } else if (message.type === 'run') {
+        javaProcess.stdin.write(
+          Buffer.concat([
+            ...message.files.map((file) =>
+              encodeJavaFrame('F', file.content, file.name)
+            ),
+            encodeJavaFrame(message.profile ? 'P' : 'R'),
+          ])
+        );
+      } else {
+        javaProcess.stdin.write(encodeJavaFrame('I', message.data + '\n'));
+      }
+      return;
+    }
+
+    if (message.type === 'cancel') {
+      javaProcess.stdin.write('__CANCEL__\n');
+    } else if (message.type === 'run') {
+      message.files.forEach((file) => {
+        javaProcess.stdin.write(`__FILE_START__ ${file.name}\n`);
+        file.content
+          .split('\n')
+          .forEach((line) => javaProcess.stdin.write(line + '\n'));
+      });
+      javaProcess.stdin.write(
+        message.profile ? '__PROFILE__\n' : '__RUN_CODE__\n'
+      );
+    } else {
+      javaProcess.stdin.write(message.data + '\n');
+    }
+  };
+
+  const settleJavaProtocol = (protocol) => {
+    clearTimeout(javaHandshakeTimer);
+    javaHandshakeTimer = null;
+    javaProtocol = protocol;
+    const pending = javaPendingMessages;
+    javaPendingMessages = [];
+    pending.forEach(writeToJava);
+  };
+
+  const negotiateJavaProtocol = () => {
+    // The shared server only speaks the framed protocol.
+    const framed =
+      config.execution.javaWrapperProtocol === 'framed' ||
+      config.execution.javaWrapperMode === 'server';
+    if (!javaProcess || !framed) {
+      return;
+    }
+    javaProtocol = 'pending';
+    javaProcess.stdin.write(
+      `${JAVA_PROTOCOL_HANDSHAKE} ${javaTrailerNonce}\n`
+    );
+    javaHandshakeTimer = setTimeout(() => {
+      logger.error(
+        `Java wrapper did not confirm framed protocol within ${JAVA_HANDSHAKE_TIMEOUT_MS}ms`
+      );
+      safeSend(
+        ws,
+        JSON.stringify({
+          type: 'error',
+          message: 'Java runtime did not start in time. Please try again.',
+        })
+      );
+      cleanup().catch((err) =>
+        logger.error('Cleanup after Java handshake timeout failed:', err)
+      );
+    }, JAVA_HANDSHAKE_TIMEOUT_MS);
+  };
+
+  // Takes the wrapper's handshake reply out of its output; see
+  // createOutputForwarder.
+  const javaHandshake = {
+    line: JAVA_PROTOCOL_HANDSHAKE,
+    isPending: () => javaProtocol === 'pending',
+    accept: () => settleJavaProtocol('framed'),
+  };
 
   const cleanup = async () => {
     dockerService.killIfExists(cProcess);
@@ -212,6 +405,7 @@ const handleConnection = async (ws, req) => {
     cppProcess = null;
     pythonProcess = null;
     javaProcess = null;
+    resetJavaProtocol();
 
     if (pooledContainer && pooledContainer !== 'local') {
       const containerId = pooledContainer;
@@ -384,22 +578,7 @@ const handleConnection = async (ws, req) => {
           }
           pythonProcess = dockerService.execPython(
             containerToUse,
-            (data) => {
-              const output = data.toString();
-              if (output.includes('__SERVER_LOG__')) {
-                const lines = output.split('\n');
-                lines.forEach((line) => {
-                  if (line.includes('__SERVER_LOG__')) {
-                    const logMsg = line.replace('__SERVER_LOG__', '').trim();
-                    logger.info(`[Python Container] ${logMsg}`);
-                  } else {
-                    safeSend(ws, line + '\n');
-                  }
-                });
-              } else {
-                safeSend(ws, output);
-              }
-            },
+            createOutputForwarder(ws, 'Python Container'),
             (code) => {
               logger.info(`Python wrapper exited with code ${code}`);
               if (code !== 0) {
@@ -492,16 +671,29 @@ const handleConnection = async (ws, req) => {
         }, 300);
       } else if (newLang === 'java') {
         setTimeout(() => {
+          javaTrailerNonce = crypto.randomBytes(16).toString('hex');
+          const forward = createOutputForwarder(
+            ws,
+            'Java Container',
+            javaTrailerNonce,
+            { handshake: javaHandshake }
+          );
           javaProcess = dockerService.execJava(
             pooledContainer,
-            (data) => safeSend(ws, data.toString()),
+            forward,
             (code) => {
               logger.info(`Java wrapper exited with code ${code}`);
               if (code !== 0) {
                 // error state handling could go here
               }
+            },
+            {
+              trailerNonce: javaTrailerNonce,
+              // The wrapper prints its trailers on stdout only.
+              onStderr: (data) => safeSend(ws, data.toString()),
             }
           );
+          negotiateJavaProtocol();
           // Send ready after process is attached (Java needs more time)
           setTimeout(() => sendReady(newLang), 200);
         }, 600);
@@ -536,6 +728,19 @@ const handleConnection = async (ws, req) => {
       return;
     }
 
+    if (parsed.type === 'stop') {
+      if (lang === 'java' && javaProcess && pooledContainer !== 'local') {
+        // The wrapper stops the program itself and keeps its compiler and
+        // standby JVMs for the next run; a new run also replaces a running one.
+        writeToJava({ type: 'cancel' });
+      } else {
+        startSession(lang).catch((err) =>
+          logger.error('startSession(stop) failed:', err)
+        );
+      }
+      return;
+    }
+
     if (parsed.type === 'lang') {
       lang = parsed.lang;
       startSession(lang).catch((err) =>
@@ -595,13 +800,11 @@ const handleConnection = async (ws, req) => {
             return reordered;
           })();
 
-          orderedJavaFiles.forEach((file) => {
-            javaProcess.stdin.write(`__FILE_START__ ${file.name}\n`);
-            file.content
-              .split('\n')
-              .forEach((line) => javaProcess.stdin.write(line + '\n'));
+          writeToJava({
+            type: 'run',
+            files: orderedJavaFiles,
+            profile: parsed.profile === true,
           });
-          javaProcess.stdin.write('__RUN_CODE__\n');
         }
 
         fileBuffer = []; // Clear the buffer
@@ -653,13 +856,13 @@ const handleConnection = async (ws, req) => {
             parsed.filename
           );
           safeSend(ws, '\x1b[2J\x1b[H');
-          javaProcess.stdin.write(`__FILE_START__ ${executeFileName}\n`);
-          inputData
-            .split('\n')
-            .forEach((line) => javaProcess.stdin.write(line + '\n'));
-          javaProcess.stdin.write('__RUN_CODE__\n');
+          writeToJava({
+            type: 'run',
+            files: [{ name: executeFileName, content: inputData }],
+            profile: parsed.profile === true,
+          });
         } else {
-          javaProcess.stdin.write(inputData + '\n');
+          writeToJava({ type: 'stdin', data: inputData });
         }
       } else if (lang === 'cpp' && cppProcess) {
         if (parsed.type === 'execute') {
@@ -15,6 +15,7 @@ const {
 const {
   COMPILED_BATCH_HARNESS_SCRIPT,
   buildHarnessTsvTestsPayload,
+  buildJavaWrapperTestsInput,
 } = require('./execution/harnessScripts');
 const {
   parseCompiledHarnessResults,
@@ -22,80 +23,19 @@ const {
 } = require('./execution/harnessParsers');
 const { determineVerdict, VERDICTS } = require('./execution/verdicts');
 const { compareOutput } = require('./execution/outputComparator');
+const { selectJavaRunProfile } = require('./execution/javaRunProfiles');
+
+// Prebuilt launcher shipped in the Java image's wrapper jar (backend/java-wrapper).
+// It starts a main class or a headless applet by name, so no launcher source is
+// generated or compiled next to the submission.
+const JAVA_WRAPPER_JAR = '/app/interactive_wrapper.jar';
+const JAVA_LAUNCHER_CLASS = 'codeguard.wrapper.Launcher';
 
 function writeBase64FileCommand(content = '', filePath) {
   const b64 = Buffer.from(content).toString('base64');
   return `echo "${b64}" | base64 -d > ${filePath}`;
 }
 
-function buildJavaMainLauncherCode(packageName, mainFqcn) {
-  const packageDecl = packageName ? `package ${packageName};\n` : '';
-  return `${packageDecl}public class __RunnerLauncher {
-  private static java.io.InputStream nonClosingStdIn() {
-    return new java.io.FilterInputStream(System.in) {
-      @Override
-      public void close() throws java.io.IOException {
-        // Keep stdin available even if user code calls Scanner.close().
-      }
-    };
-  }
-    public static void main(String[] args) {
-        try {
-      System.setIn(nonClosingStdIn());
-            java.lang.reflect.Method mainMethod =
-                Class.forName("${mainFqcn}").getMethod("main", String[].class);
-            mainMethod.invoke(null, (Object) args);
-        } catch (Throwable t) {
-          Throwable cause = (t instanceof java.lang.reflect.InvocationTargetException && t.getCause() != null)
-            ? t.getCause()
-            : t;
-          if (cause instanceof java.awt.HeadlessException) {
-            System.out.println("GUI execution skipped in headless environment.");
-            return;
-          }
-            cause.printStackTrace();
-            System.exit(1);
-        }
-    }
-}`;
-}
-
-function buildJavaAppletLauncherCode(packageName, appletFqcn) {
-  const packageDecl = packageName ? `package ${packageName};\n` : '';
-  return `${packageDecl}public class __RunnerLauncher {
-    public static void main(String[] args) {
-        System.setProperty("java.awt.headless", "true");
-        try {
-            Object instance = Class.forName("${appletFqcn}").getDeclaredConstructor().newInstance();
-            if (instance instanceof java.applet.Applet) {
-                java.applet.Applet applet = (java.applet.Applet) instance;
-                applet.init();
-                applet.start();
-                java.awt.image.BufferedImage canvas = new java.awt.image.BufferedImage(
-                    1,
-                    1,
-                    java.awt.image.BufferedImage.TYPE_INT_ARGB
-                );
-                java.awt.Graphics2D g = canvas.createGraphics();
-                applet.paint(g);
-                g.dispose();
-            }
-            System.out.println("Applet executed in headless mode.");
-        } catch (Throwable t) {
-          Throwable cause = (t instanceof java.lang.reflect.InvocationTargetException && t.getCause() != null)
-            ? t.getCause()
-            : t;
-          if (cause instanceof java.awt.HeadlessException) {
-            System.out.println("Applet compiled successfully (headless runtime skipped).");
-            return;
-          }
-            t.printStackTrace();
-            System.exit(1);
-        }
-    }
-}`;
-}
-
 function resolveJavaExecutionPlan(code = '') {
   const source = String(code || '');
   const packageMatch = source.match(
@@ -117,7 +57,7 @@ function resolveJavaExecutionPlan(code = '') {
   const mainIndex = source.search(/\bpublic\s+static\s+void\s+main\s*\(/);
   const hasMain = mainIndex !== -1;
 
-  let launcherCode = '';
+  let launchMode = null;
 
   if (hasMain) {
     const classRegex = /^(?:public\s+)?class\s+([A-Za-z_][A-Za-z0-9_]*)/gm;
@@ -133,35 +73,23 @@ function resolveJavaExecutionPlan(code = '') {
       runClassName = lastClassBeforeMain;
     }
 
-    const mainFqcn = packageName
-      ? `${packageName}.${runClassName}`
-      : runClassName;
-    launcherCode = buildJavaMainLauncherCode(packageName, mainFqcn);
-    runClassName = packageName
-      ? `${packageName}.__RunnerLauncher`
-      : '__RunnerLauncher';
+    launchMode = 'main';
   } else {
     const appletClassMatch = source.match(
       /(?:public\s+)?class\s+([A-Za-z_][A-Za-z0-9_]*)\s+extends\s+(?:java\.applet\.Applet|javax\.swing\.JApplet|Applet|JApplet)\b/
     );
 
     if (appletClassMatch?.[1]) {
-      const appletClassName = appletClassMatch[1];
-      const appletFqcn = packageName
-        ? `${packageName}.${appletClassName}`
-        : appletClassName;
-      launcherCode = buildJavaAppletLauncherCode(packageName, appletFqcn);
-      runClassName = packageName
-        ? `${packageName}.__RunnerLauncher`
-        : '__RunnerLauncher';
+      runClassName = appletClassMatch[1];
+      launchMode = 'applet';
     }
   }
 
-  if (!launcherCode && packageName) {
+  if (packageName) {
     runClassName = `${packageName}.${runClassName}`;
   }
 
-  return { compileClassName, runClassName, launcherCode };
+  return { compileClassName, runClassName, launchMode };
 }
 
 async function runCommand(args, options = {}) {
@@ -187,7 +115,13 @@ async function runCommand(args, options = {}) {
   return { stdout, stderr, exitCode };
 }
 
-async function compileInContainer(containerName, code, lang, uniqueId) {
+async function compileInContainer(
+  containerName,
+  code,
+  lang,
+  uniqueId,
+  options = {}
+) {
   const escapedCode = code.replace(/\r/g, '');
   const normalizedLang = String(lang || '').toLowerCase();
   let cmd = '';
@@ -208,14 +142,17 @@ async function compileInContainer(containerName, code, lang, uniqueId) {
       `/tmp/${uniqueId}/code.cpp`
     )} && g++ -O2 /tmp/${uniqueId}/code.cpp -o /tmp/${uniqueId}/a.out -lm 2>/tmp/${uniqueId}/gcc_err.txt || (cat /tmp/${uniqueId}/gcc_err.txt 1>&2 && exit 1)`;
   } else if (normalizedLang === 'java') {
-    const { compileClassName, runClassName, launcherCode } =
+    const { compileClassName, runClassName, launchMode } =
       resolveJavaExecutionPlan(escapedCode);
+    // JVM flags of the batch's run profile, read back by every test case run.
+    const { javaFlags = '' } = options;
 
     cmd = `
 mkdir -p /tmp/${uniqueId} &&
 ${writeBase64FileCommand(escapedCode, `/tmp/${uniqueId}/${compileClassName}.java`)} &&
-${launcherCode ? writeBase64FileCommand(launcherCode, `/tmp/${uniqueId}/__RunnerLauncher.java`) + ' &&' : ''}
 ${writeBase64FileCommand(runClassName, `/tmp/${uniqueId}/main_class.txt`)} &&
+${launchMode ? writeBase64FileCommand(launchMode, `/tmp/${uniqueId}/launch_mode.txt`) + ' &&' : ''}
+${javaFlags ? writeBase64FileCommand(javaFlags, `/tmp/${uniqueId}/java_opts.txt`) + ' &&' : ''}
 javac -d /tmp/${uniqueId} /tmp/${uniqueId}/*.java 2> /tmp/${uniqueId}/compile_err.txt || (cat /tmp/${uniqueId}/compile_err.txt 1>&2 && exit 1)
 `;
   }
@@ -249,7 +186,11 @@ async function execTestCase(containerName, tc, lang, uniqueId) {
 MAIN_CLASS=$(cat /tmp/${uniqueId}/main_class.txt 2>/dev/null || true)
 if [ -z "$MAIN_CLASS" ]; then MAIN_CLASS=$(grep -l "public static void main" /tmp/${uniqueId}/*.java | head -n1 | xargs basename -s .java); fi
 if [ -z "$MAIN_CLASS" ]; then MAIN_CLASS=$(ls /tmp/${uniqueId}/*.class | head -n1 | xargs basename -s .class); fi
-java -cp /tmp/${uniqueId} "$MAIN_CLASS"
+JAVA_CP=/tmp/${uniqueId}
+JAVA_LAUNCH=""
+if [ -s /tmp/${uniqueId}/launch_mode.txt ]; then JAVA_CP="${JAVA_WRAPPER_JAR}:/tmp/${uniqueId}"; JAVA_LAUNCH="${JAVA_LAUNCHER_CLASS} $(cat /tmp/${uniqueId}/launch_mode.txt)"; fi
+JAVA_OPTS=$(cat /tmp/${uniqueId}/java_opts.txt 2>/dev/null || true)
+java $JAVA_OPTS -cp "$JAVA_CP" $JAVA_LAUNCH "$MAIN_CLASS"
 `;
   }
 
@@ -339,12 +280,7 @@ async function runCompiledHarnessInContainer(
 ) {
   const { failFast = false } = options;
   const normalizedLang = String(lang || '').toLowerCase();
-  const harnessLang =
-    normalizedLang === 'java'
-      ? 'java'
-      : normalizedLang === 'c'
-        ? 'c'
-        : 'python';
+  const harnessLang = normalizedLang === 'c' ? 'c' : 'python';
   const harnessPath = `/tmp/${uniqueId}/batch_harness.sh`;
   const testsPath = `/tmp/${uniqueId}/tests.tsv`;
   const testsPayload = buildHarnessTsvTestsPayload(batch);
@@ -382,6 +318,60 @@ async function runCompiledHarnessInContainer(
   });
 }
 
+// Java batches are graded by the wrapper itself: it compiles once and runs
+// every case in a fresh class loader inside one JVM, instead of the shell
+// harness starting a JVM per case.
+async function runJavaWrapperTestsInContainer(
+  containerName,
+  code,
+  batch,
+  uniqueId,
+  options = {}
+) {
+  const { failFast = false } = options;
+  const escapedCode = code.replace(/\r/g, '');
+  const { compileClassName } = resolveJavaExecutionPlan(escapedCode);
+  const inputPath = `/tmp/${uniqueId}/wrapper_tests.txt`;
+  const wrapperInput = buildJavaWrapperTestsInput(
+    `${compileClassName}.java`,
+    escapedCode,
+    batch,
+    failFast
+  );
+
+  const totalTimeMs = batch.reduce(
+    (sum, tc) => sum + (tc.time_limit_ms ?? 2000),
+    0
+  );
+  // The wrapper also compiles, so it gets more headroom than the shell harness.
+  const hardTimeoutSec = Math.max(10, Math.ceil(totalTimeMs / 1000) + 15);
+
+  const cmd = [
+    `mkdir -p /tmp/${uniqueId}`,
+    writeBase64FileCommand(wrapperInput, inputPath),
+    `timeout ${hardTimeoutSec} java -XX:SharedArchiveFile=/app/cds/wrapper.jsa -Xshare:auto -jar ${JAVA_WRAPPER_JAR} < ${inputPath}`,
+  ].join(' && ');
+
+  const wrapperResult = await runCommand([
+    'exec',
+    containerName,
+    'sh',
+    '-c',
+    cmd,
+  ]);
+
+  const resultById = parseCompiledHarnessResults(wrapperResult.stdout, batch);
+
+  return buildOrderedCompiledResults({
+    batch,
+    resultById,
+    failFast,
+    timedOut: wrapperResult.exitCode === 124,
+    stderr: wrapperResult.stderr,
+    exitCode: wrapperResult.exitCode,
+  });
+}
+
 module.exports = async function runBatchCode(
   code,
   lang = 'python',
@@ -487,12 +477,37 @@ module.exports = async function runBatchCode(
       return sortBatchResults(results, batch);
     }
 
+    if (useCompiledBatchHarness && normalizedLang === 'java') {
+      logger.info(
+        `Executing ${batch.length} test cases via the Java wrapper in ${containerId}...`
+      );
+      const wrapperResults = await runJavaWrapperTestsInContainer(
+        containerId,
+        code,
+        batch,
+        uniqueId,
+        { failFast: effectiveFailFast }
+      );
+      logger.info(`Final batch results: ${wrapperResults.length}`);
+      return sortBatchResults(wrapperResults, batch);
+    }
+
+    let javaFlags = '';
+    if (normalizedLang === 'java') {
+      const profile = selectJavaRunProfile({
+        timeLimitMs: Math.max(...batch.map((tc) => tc.time_limit_ms ?? 2000)),
+      });
+      javaFlags = profile.flags;
+      logger.info(`Java run profile for ${uniqueId}: ${profile.name}`);
+    }
+
     logger.info(`Compiling code in container ${containerId}...`);
     const compileResult = await compileInContainer(
       containerId,
       code,
       normalizedLang,
-      uniqueId
+      uniqueId,
+      { javaFlags }
     );
 
     if (compileResult.exitCode !== 0) {
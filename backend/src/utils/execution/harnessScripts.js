@@ -9,6 +9,9 @@
  *
  * Memory is captured via /usr/bin/time -v (GNU time) → "Maximum resident set size"
  * which gives kilobytes on Linux. Falls back to 0 if not available.
+ *
+ * Java batches do not use this script: the Java image's wrapper grades them
+ * itself (see buildJavaWrapperTestsInput), running every case in one JVM.
  */
 
 const COMPILED_BATCH_HARNESS_SCRIPT = [
@@ -96,19 +99,8 @@ const COMPILED_BATCH_HARNESS_SCRIPT = [
   '}',
   '',
   '# ── Language-specific setup ────────────────────────────────────────',
-  'main_class=""',
   'python_entry="$workdir/code.py"',
-  'if [ "$lang" = "java" ]; then',
-  '  if [ -f "$workdir/main_class.txt" ]; then',
-  '    main_class=$(cat "$workdir/main_class.txt" 2>/dev/null || true)',
-  '  fi',
-  '  if [ -z "$main_class" ]; then',
-  '  main_class=$(grep -l "public static void main" "$workdir"/*.java 2>/dev/null | head -n1 | xargs basename -s .java 2>/dev/null || true)',
-  '  fi',
-  '  if [ -z "$main_class" ]; then',
-  '    main_class=$(ls "$workdir"/*.class 2>/dev/null | head -n1 | xargs basename -s .class 2>/dev/null || true)',
-  '  fi',
-  'elif [ "$lang" = "python" ]; then',
+  'if [ "$lang" = "python" ]; then',
   '  pyc_entry=$(ls "$workdir"/__pycache__/code.*.pyc 2>/dev/null | head -n1 || true)',
   '  if [ -n "$pyc_entry" ]; then',
   '    python_entry="$pyc_entry"',
@@ -138,8 +130,6 @@ const COMPILED_BATCH_HARNESS_SCRIPT = [
   '  # Build the actual execution command',
   '  if [ "$lang" = "c" ]; then',
   '    run_target="$workdir/a.out"',
-  '  elif [ "$lang" = "java" ]; then',
-  '    run_target="java -cp $workdir $main_class"',
   '  else',
   '    run_target="python3 $python_entry"',
   '  fi',
@@ -159,9 +149,6 @@ const COMPILED_BATCH_HARNESS_SCRIPT = [
   '    if [ "$lang" = "c" ]; then',
   '      stdout_text=$(printf \'%s\' "$input_text" | run_with_timeout "$timeout_sec" "$workdir/a.out" 2>"$stderr_file")',
   '      exit_code=$?',
-  '    elif [ "$lang" = "java" ]; then',
-  '      stdout_text=$(printf \'%s\' "$input_text" | run_with_timeout "$timeout_sec" java -cp "$workdir" "$main_class" 2>"$stderr_file")',
-  '      exit_code=$?',
   '    else',
   '      stdout_text=$(printf \'%s\' "$input_text" | run_with_timeout "$timeout_sec" python3 "$python_entry" 2>"$stderr_file")',
   '      exit_code=$?',
@@ -218,7 +205,24 @@ function buildHarnessTsvTestsPayload(batch) {
     .join('\n');
 }
 
+/**
+ * Stdin for the Java wrapper's test mode: the source file, then the same TSV
+ * payload between __RUN_TESTS__ <fail_fast> and __END_TESTS__. The wrapper
+ * compiles once and answers with the __RESULT__ lines of this script.
+ */
+function buildJavaWrapperTestsInput(fileName, code, batch, failFast) {
+  const source = code.endsWith('\n') ? code : `${code}\n`;
+  return [
+    `__FILE_START__ ${fileName}\n`,
+    source,
+    `__RUN_TESTS__ ${failFast ? 1 : 0}\n`,
+    `${buildHarnessTsvTestsPayload(batch)}\n`,
+    '__END_TESTS__\n',
+  ].join('');
+}
+
 module.exports = {
   COMPILED_BATCH_HARNESS_SCRIPT,
   buildHarnessTsvTestsPayload,
+  buildJavaWrapperTestsInput,
 };
@@ -0,0 +1,71 @@
+/**
+ * JVM flag sets for Java user programs, shared by the container runners.
+ *
+ * Mirrors RunProfile in the Java wrapper (backend/java-wrapper); keep the
+ * two in sync. The wrapper picks a profile from the previous run's CPU time. The
+ * batch runners have no such history, so they go by the test time limit: a
+ * practical whose limit was raised above the 2s default expects programs that
+ * compute for a while.
+ */
+
+const config = require('../../config');
+
+const JAVA_RUN_PROFILES = Object.freeze({
+  startup: '-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:MaxRAMPercentage=50',
+  throughput: '-XX:+UseParallelGC -XX:MaxRAMPercentage=50',
+  'low-memory':
+    '-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:MaxRAMPercentage=40 -XX:ReservedCodeCacheSize=16m -XX:-UsePerfData',
+});
+
+// Same default as the wrapper's JAVA_LOW_MEMORY_MB.
+const LOW_MEMORY_MB = 96;
+const THROUGHPUT_TIME_LIMIT_MS = 3000;
+
+/**
+ * Converts a Docker memory limit ("128m", "1g", "512k" or bytes) to megabytes.
+ * @param {string|number} limit
+ * @returns {number|null} Megabytes, or null when unset or unparseable
+ */
+const parseMemoryLimitMb = (limit) => {
+  const match = String(limit ?? '')
+    .trim()
+    .toLowerCase()
+    .match(/^(\d+(?:\.\d+)?)([kmg]?)b?$/);
+  if (!match) return null;
+  const value = Number(match[1]);
+  const unitMb = { g: 1024, m: 1, k: 1 / 1024, '': 1 / (1024 * 1024) };
+  return value * unitMb[match[2]];
+};
+
+/**
+ * Picks the run profile for a Java batch.
+ * @param {Object} options
+ * @param {number} [options.timeLimitMs] - Longest time limit among the tests to run
+ * @param {string} [options.memoryLimit] - Container memory limit in Docker syntax
+ * @param {string} [options.profile] - Pinned profile name; anything else selects automatically
+ * @returns {{name: string, flags: string}}
+ */
+const selectJavaRunProfile = ({
+  timeLimitMs = 0,
+  memoryLimit = config.docker.javaMemory,
+  profile = config.execution.javaRunProfile,
+} = {}) => {
+  let name = profile;
+  if (!Object.hasOwn(JAVA_RUN_PROFILES, name)) {
+    const memoryMb = parseMemoryLimitMb(memoryLimit);
+    if (memoryMb !== null && memoryMb < LOW_MEMORY_MB) {
+      name = 'low-memory';
+    } else if (timeLimitMs >= THROUGHPUT_TIME_LIMIT_MS) {
+      name = 'throughput';
+    } else {
+      name = 'startup';
+    }
+  }
+  return { name, flags: JAVA_RUN_PROFILES[name] };
+};
+
+module.exports = {
+  JAVA_RUN_PROFILES,
+  parseMemoryLimitMb,
+  selectJavaRunProfile,
+};
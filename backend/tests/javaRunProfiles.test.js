@@ -0,0 +1,79 @@
+const {
+  JAVA_RUN_PROFILES,
+  parseMemoryLimitMb,
+  selectJavaRunProfile,
+} = require('../src/utils/execution/javaRunProfiles');
+
+describe('parseMemoryLimitMb', () => {
+  it('converts Docker memory units to megabytes', () => {
+    expect(parseMemoryLimitMb('128m')).toBe(128);
+    expect(parseMemoryLimitMb('1g')).toBe(1024);
+    expect(parseMemoryLimitMb('512k')).toBe(0.5);
+    expect(parseMemoryLimitMb('256MB')).toBe(256);
+    expect(parseMemoryLimitMb(' 1.5G ')).toBe(1536);
+  });
+
+  it('treats bare numbers as bytes', () => {
+    expect(parseMemoryLimitMb(64 * 1024 * 1024)).toBe(64);
+    expect(parseMemoryLimitMb('1048576')).toBe(1);
+  });
+
+  it('returns null when unset or unparseable', () => {
+    expect(parseMemoryLimitMb(undefined)).toBeNull();
+    expect(parseMemoryLimitMb('')).toBeNull();
+    expect(parseMemoryLimitMb('lots')).toBeNull();
+    expect(parseMemoryLimitMb('128t')).toBeNull();
+  });
+});
+
+describe('selectJavaRunProfile', () => {
+  it('uses the startup profile for default time limits', () => {
+    expect(
+      selectJavaRunProfile({
+        timeLimitMs: 2000,
+        memoryLimit: '256m',
+        profile: 'auto',
+      })
+    ).toEqual({ name: 'startup', flags: JAVA_RUN_PROFILES.startup });
+  });
+
+  it('uses the throughput profile for raised time limits', () => {
+    expect(
+      selectJavaRunProfile({
+        timeLimitMs: 3000,
+        memoryLimit: '256m',
+        profile: 'auto',
+      }).name
+    ).toBe('throughput');
+  });
+
+  it('prefers the low-memory profile for small containers', () => {
+    expect(
+      selectJavaRunProfile({
+        timeLimitMs: 10000,
+        memoryLimit: '64m',
+        profile: 'auto',
+      }).name
+    ).toBe('low-memory');
+  });
+
+  it('ignores an unparseable memory limit', () => {
+    expect(
+      selectJavaRunProfile({
+        timeLimitMs: 0,
+        memoryLimit: 'unlimited',
+        profile: 'auto',
+      }).name
+    ).toBe('startup');
+  });
+
+  it('honours a pinned profile', () => {
+    expect(
+      selectJavaRunProfile({
+        timeLimitMs: 0,
+        memoryLimit: '64m',
+        profile: 'throughput',
+      })
+    ).toEqual({ name: 'throughput', flags: JAVA_RUN_PROFILES.throughput });
+  });
+});
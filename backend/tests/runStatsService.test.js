@@ -0,0 +1,36 @@
+const {
+  RUN_STATS_PREFIX,
+  parseRunStats,
+} = require('../src/services/runStatsService');
+
+describe('parseRunStats', () => {
+  it('reads key=value pairs after the nonce tag', () => {
+    expect(
+      parseRunStats(
+        `${RUN_STATS_PREFIX}:0123abcd mode=warm compiled=true total_ms=42`
+      )
+    ).toEqual({ mode: 'warm', compiled: 'true', total_ms: 42 });
+  });
+
+  it('accepts an untagged line', () => {
+    expect(parseRunStats(`${RUN_STATS_PREFIX} run_ms=7`)).toEqual({
+      run_ms: 7,
+    });
+  });
+
+  it('keeps non-integer values as strings', () => {
+    expect(
+      parseRunStats(`${RUN_STATS_PREFIX}:n delta=-3 ratio=1.5 gc=12ms`)
+    ).toEqual({ delta: -3, ratio: '1.5', gc: '12ms' });
+  });
+
+  it('skips pairs without a key', () => {
+    expect(parseRunStats(`${RUN_STATS_PREFIX}:n flag =x ok=1`)).toEqual({
+      ok: 1,
+    });
+  });
+
+  it('returns null for lines without the prefix', () => {
+    expect(parseRunStats('total_ms=42')).toBeNull();
+  });
+});
@@ -11,7 +11,7 @@ const CodeEditor = dynamic(() => import("@/components/editor/CodeEditor"), {
     </div>
   ),
 });
-import { ChevronDown, Loader2, Sparkles } from "lucide-react";
+import { ChevronDown, Gauge, Loader2, Sparkles, Square } from "lucide-react";
 import { usePathname, useRouter } from "next/navigation";
 import { createClient } from "@/lib/supabase/client";
 import { generatePdfClient } from "@/lib/ClientPdf";
@@ -87,6 +87,26 @@ export default function Home() {
     }
   }, [interactiveOutput]);
 
+  const runInTerminal = (profile = false) => {
+    setInteractiveOutput("");
+    setHasError(false); // Reset error state on run
+    setPlotImages([]);
+    setIsExecuting(true);
+    if (terminalMounted && interactiveTerminalRef.current) {
+      // Run only the active file's code (single-file mode)
+      const activeFile = files.find((f) => f.name === activeFileName);
+      if (activeFile) {
+        interactiveTerminalRef.current.startExecution(
+          files,
+          activeFileName,
+          undefined,
+          { profile },
+        );
+      }
+    }
+    setTimeout(() => setIsExecuting(false), 2000);
+  };
+
   const handleExplainError = async () => {
     if (!interactiveTerminalRef.current) return;
 
@@ -467,28 +487,7 @@ export default function Home() {
                         }
                         disabled={false}
                         disableClipboardActions={true}
-                        onRun={() => {
-                          setInteractiveOutput("");
-                          setHasError(false); // Reset error state on run
-                          setPlotImages([]);
-                          setIsExecuting(true);
-                          if (
-                            terminalMounted &&
-                            interactiveTerminalRef.current
-                          ) {
-                            // Run only the active file's code (single-file mode)
-                            const activeFile = files.find(
-                              (f) => f.name === activeFileName,
-                            );
-                            if (activeFile) {
-                              interactiveTerminalRef.current.startExecution(
-                                files,
-                                activeFileName,
-                              );
-                            }
-                          }
-                          setTimeout(() => setIsExecuting(false), 2000);
-                        }}
+                        onRun={() => runInTerminal()}
                         onDownload={downloadPdf}
                         onSubmit={() => { }}
                         loading={false}
@@ -553,6 +552,31 @@ export default function Home() {
                             Explain Error
                           </Button>
                         )}
+                        {lang === "java" && (
+                          <Button
+                            variant="ghost"
+                            size="sm"
+                            disabled={!terminalMounted}
+                            onClick={() => runInTerminal(true)}
+                            title="Run with the profiler and show where time and memory go"
+                            className="h-6 px-2 text-[10px] font-semibold uppercase tracking-wider rounded-full bg-gray-200/60 dark:bg-gray-700/40 text-gray-600 dark:text-gray-300 hover:bg-gray-300/70 dark:hover:bg-gray-700/70 border border-gray-300/50 dark:border-gray-600/50 flex items-center gap-1.5"
+                          >
+                            <Gauge className="w-3 h-3" />
+                            Profile
+                          </Button>
+                        )}
+                        <Button
+                          variant="ghost"
+                          size="sm"
+                          disabled={!terminalMounted}
+                          onClick={() =>
+                            interactiveTerminalRef.current?.stopExecution()
+                          }
+                          className="h-6 px-2 text-[10px] font-semibold uppercase tracking-wider rounded-full bg-gray-200/60 dark:bg-gray-700/40 text-gray-600 dark:text-gray-300 hover:bg-gray-300/70 dark:hover:bg-gray-700/70 border border-gray-300/50 dark:border-gray-600/50 flex items-center gap-1.5"
+                        >
+                          <Square className="w-3 h-3" />
+                          Stop
+                        </Button>
                         <span className="px-2.5 py-1 text-[10px] font-semibold uppercase tracking-wider rounded-full bg-gradient-to-r from-cyan-500/20 to-sky-500/20 text-indigo-600 dark:text-indigo-400 border border-indigo-200/50 dark:border-indigo-700/50">
                           {lang}
                         </span>
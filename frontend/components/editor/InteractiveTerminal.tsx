@@ -17,13 +17,20 @@ interface InteractiveTerminalProps {
   onImage?: (base64: string) => void;
 }
 
+export interface ExecutionOptions {
+  // Java only: run with Flight Recorder and print a hot-method report.
+  profile?: boolean;
+}
+
 export interface InteractiveTerminalHandle {
   startExecution: (
     files: FileData[] | string,
     activeFileOrLang?: string,
     lang?: string,
+    options?: ExecutionOptions,
   ) => void;
   switchLanguage: (lang: string) => void;
+  stopExecution: () => void;
   write: (text: string) => void;
 }
 
@@ -360,6 +367,8 @@ const InteractiveTerminal = forwardRef<
       startExecution: (
         filesOrCode: FileData[] | string,
         activeFileOrLang?: string,
+        _lang?: string,
+        options?: ExecutionOptions,
       ) => {
         if (!socket.current || socket.current.readyState !== WebSocket.OPEN) {
           term.current?.write(
@@ -381,7 +390,7 @@ const InteractiveTerminal = forwardRef<
           const retryExecution = () => {
             retryCount++;
             if (isSessionReady.current && !isSwitching.current) {
-              performExecution(filesOrCode, activeFileOrLang);
+              performExecution(filesOrCode, activeFileOrLang, options);
             } else if (retryCount < maxRetries) {
               term.current?.write(
                 `\r\n\x1b[1;33m⏳ Still waiting... (attempt ${retryCount}/${maxRetries})\x1b[0m\r\n`,
@@ -397,7 +406,12 @@ const InteractiveTerminal = forwardRef<
           return;
         }
 
-        performExecution(filesOrCode, activeFileOrLang);
+        performExecution(filesOrCode, activeFileOrLang, options);
+      },
+      stopExecution: () => {
+        if (socket.current?.readyState === WebSocket.OPEN) {
+          socket.current.send(JSON.stringify({ type: "stop" }));
+        }
       },
       switchLanguage: (newLang: string) => {
         currentLang.current = newLang;
@@ -442,7 +456,9 @@ const InteractiveTerminal = forwardRef<
     const performExecution = (
       filesOrCode: FileData[] | string,
       activeFileOrLang?: string,
+      options?: ExecutionOptions,
     ) => {
+      const profile = options?.profile === true;
       // Clear terminal before running
       term.current?.clear();
 
@@ -486,6 +502,7 @@ const InteractiveTerminal = forwardRef<
             filename: file.name,
             isLast: index === files.length - 1,
             activeFile: file.name === activeFileName,
+            profile,
           });
           socket.current?.send(msg);
         });
@@ -494,12 +511,12 @@ const InteractiveTerminal = forwardRef<
         const timestamp = new Date().toLocaleTimeString();
         term.current?.write(
           `\r\n\x1b[1;30;46m 🚀 EXECUTION STARTED \x1b[0m \x1b[90m at ${timestamp}\x1b[0m\r\n` +
-          `\x1b[1;36m➜ Running ${activeFileName}...\x1b[0m\r\n\n`
+          `\x1b[1;36m➜ ${profile ? "Profiling" : "Running"} ${activeFileName}...\x1b[0m\r\n\n`
         );
       } else {
         // Single-file mode (backward compatibility)
         const code = filesOrCode as string;
-        const msg = JSON.stringify({ type: "execute", data: code });
+        const msg = JSON.stringify({ type: "execute", data: code, profile });
         socket.current?.send(msg);
         term.current?.write(`\r\n\x1b[1;36m🚀 Running code...\x1b[0m\r\n\n`);
       }